@@ -0,0 +1,122 @@
+package nl.jessedezwart.gamehouse.bench;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.ui.ExtendedModelMap;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import jakarta.persistence.EntityManagerFactory;
+import nl.jessedezwart.gamehouse.GamehouseDashboardApplication;
+import nl.jessedezwart.gamehouse.controller.DashboardController;
+import nl.jessedezwart.gamehouse.repository.GameSessionRepository;
+
+// Dashboard endpoints against synthetic histories, called on the controller the way Spring MVC would.
+// The result cache is disabled so every invocation pays the full computation.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DashboardBenchmark {
+
+    private static final long FROM = SyntheticSessions.END.minus(Duration.ofDays(1)).toEpochMilli();
+    private static final long TO = SyntheticSessions.END.toEpochMilli();
+
+    @Param({ "10000", "1000000", "10000000" })
+    public long rows;
+
+    private ConfigurableApplicationContext context;
+    private DashboardController controller;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        File dataDir = new File(System.getProperty("gamehouse.bench.data-dir", "build/jmh-data"));
+        dataDir.mkdirs();
+        String url = "jdbc:sqlite:" + new File(dataDir, "sessions-" + rows + ".db").getAbsolutePath();
+
+        // Seed in a throwaway context, so the measured one loads its in-memory state from the full dataset
+        try (ConfigurableApplicationContext seeding = start(url)) {
+            EntityManagerFactory emf = seeding.getBean(EntityManagerFactory.class);
+            new SyntheticSessions(seeding.getBean(GameSessionRepository.class),
+                    SharedEntityManagerCreator.createSharedEntityManager(emf),
+                    seeding.getBean(PlatformTransactionManager.class)).seed(rows);
+        }
+
+        context = start(url);
+        controller = context.getBean(DashboardController.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    private static ConfigurableApplicationContext start(String url) {
+        return new SpringApplicationBuilder(GamehouseDashboardApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=" + url,
+                        "spring.jpa.database-platform=org.hibernate.community.dialect.SQLiteDialect",
+                        "discord.enabled=false",
+                        "dashboard.cache.ttl-ms=0",
+                        "logging.level.root=WARN",
+                        "logging.level.nl.jessedezwart.gamehouse=INFO")
+                .run();
+    }
+
+    @Benchmark
+    public Object leaderboard() {
+        ExtendedModelMap model = new ExtendedModelMap();
+        controller.getLeaderboard(model);
+        return model;
+    }
+
+    @Benchmark
+    public Object userLeaderboard() {
+        ExtendedModelMap model = new ExtendedModelMap();
+        controller.getUserLeaderboard(50, model);
+        return model;
+    }
+
+    @Benchmark
+    public Object gamePlaytimeDistribution() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        return controller.getGamePlaytimeDistribution(request("/games/stats/game-distribution", response), response);
+    }
+
+    @Benchmark
+    public Object peakConcurrency() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        return controller.getPeakConcurrency(60, FROM, TO, request("/games/stats/peak-concurrency", response),
+                response);
+    }
+
+    @Benchmark
+    public Object sessionTimeline() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        return controller.getSessionTimeline(FROM, TO, null, null, null, 500,
+                request("/games/stats/session-timeline", response), response);
+    }
+
+    // Fresh request without If-None-Match, so the ETag check never short-circuits
+    private static ServletWebRequest request(String path, MockHttpServletResponse response) {
+        return new ServletWebRequest(new MockHttpServletRequest("GET", path), response);
+    }
+}
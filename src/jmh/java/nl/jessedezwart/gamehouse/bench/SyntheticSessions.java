@@ -0,0 +1,102 @@
+package nl.jessedezwart.gamehouse.bench;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Random;
+
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.persistence.EntityManager;
+import nl.jessedezwart.gamehouse.entity.GameSession;
+import nl.jessedezwart.gamehouse.repository.GameSessionRepository;
+
+// Deterministic session history for benchmarks: closed sessions spread over the year before END,
+// plus a fixed set of sessions still active at END
+public class SyntheticSessions {
+
+    private static final Logger log = LoggerFactory.getLogger(SyntheticSessions.class);
+
+    public static final Instant END = Instant.parse("2026-01-01T00:00:00Z");
+    public static final Duration SPAN = Duration.ofDays(365);
+
+    public static final int GAMES = 200;
+    public static final int ACTIVE = 100;
+
+    private static final int BATCH_SIZE = 10_000;
+
+    private final GameSessionRepository sessionRepo;
+    private final EntityManager entityManager;
+    private final TransactionTemplate tx;
+
+    public SyntheticSessions(GameSessionRepository sessionRepo, EntityManager entityManager,
+            PlatformTransactionManager transactionManager) {
+        this.sessionRepo = sessionRepo;
+        this.entityManager = entityManager;
+        this.tx = new TransactionTemplate(transactionManager);
+    }
+
+    // Roughly one user per 100 sessions, at least 100 and at most 50k
+    public static int users(long rows) {
+        return (int) Math.max(100, Math.min(rows / 100, 50_000));
+    }
+
+    // Fills the database up to rows sessions; rows already present are kept
+    public void seed(long rows) {
+        long existing = sessionRepo.count();
+        if (existing >= rows)
+            return;
+
+        log.info("Seeding {} synthetic session(s), {} present", rows - existing, existing);
+        long started = System.nanoTime();
+        int users = users(rows);
+        Random random = new Random(42 + existing);
+        for (long i = existing; i < rows; i += BATCH_SIZE) {
+            long from = i;
+            long to = Math.min(rows, i + BATCH_SIZE);
+            tx.executeWithoutResult(status -> {
+                entityManager.unwrap(Session.class).setJdbcBatchSize(500);
+                for (long n = from; n < to; n++) {
+                    entityManager.persist(n < ACTIVE ? active(n, random) : closed(n, users, random));
+                }
+                entityManager.flush();
+                entityManager.clear();
+            });
+        }
+        log.info("Seeded {} session(s) in {} s", rows - existing,
+                Duration.ofNanos(System.nanoTime() - started).toSeconds());
+    }
+
+    // One active session per user for the first ACTIVE users, started within the last 8 hours
+    private static GameSession active(long n, Random random) {
+        GameSession s = session("user-" + n, "Game " + (n % GAMES));
+        s.setStartTime(END.minusSeconds(random.nextInt(8 * 3600)));
+        s.setTotalDuration(Duration.ZERO);
+        s.setActive(true);
+        s.setChangeSeq(n + 1);
+        return s;
+    }
+
+    private static GameSession closed(long n, int users, Random random) {
+        GameSession s = session("user-" + random.nextInt(users), "Game " + random.nextInt(GAMES));
+        Duration length = Duration.ofSeconds(300 + random.nextInt(4 * 3600));
+        Instant start = END.minus(SPAN).plusSeconds((long) (random.nextDouble() * (SPAN.toSeconds() - 4 * 3600)));
+        s.setStartTime(start);
+        s.setTotalDuration(length);
+        s.setEndTime(start.plus(length));
+        s.setActive(false);
+        s.setChangeSeq(n + 1);
+        return s;
+    }
+
+    private static GameSession session(String userId, String game) {
+        GameSession s = new GameSession();
+        s.setDiscordUserId(userId);
+        s.setUsername(userId.replace("user-", "Player "));
+        s.setGame(game);
+        return s;
+    }
+}
@@ -1,34 +1,63 @@
 package nl.jessedezwart.gamehouse.controller;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableMap;
-import java.util.TreeMap;
 import java.util.stream.Collectors;
 
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import jakarta.servlet.http.HttpServletResponse;
+import nl.jessedezwart.gamehouse.dto.SessionChangesDTO;
 import nl.jessedezwart.gamehouse.dto.SessionTimelineDTO;
+import nl.jessedezwart.gamehouse.dto.SessionTimelinePageDTO;
 import nl.jessedezwart.gamehouse.entity.GameSession;
 import nl.jessedezwart.gamehouse.repository.GameSessionRepository;
+import nl.jessedezwart.gamehouse.repository.TimelineRow;
+import nl.jessedezwart.gamehouse.service.ActiveSessionIndex;
+import nl.jessedezwart.gamehouse.service.ConcurrencyHistogram;
+import nl.jessedezwart.gamehouse.service.DashboardCache;
+import nl.jessedezwart.gamehouse.service.LiveSessionBroadcaster;
+import nl.jessedezwart.gamehouse.service.PlaytimeAggregates;
+import nl.jessedezwart.gamehouse.service.SessionDataVersion;
 
 @Controller
 public class DashboardController {
 
     private final GameSessionRepository sessionRepo;
-
-    public DashboardController(GameSessionRepository sessionRepo) {
+    private final PlaytimeAggregates aggregates;
+    private final ConcurrencyHistogram histogram;
+    private final ActiveSessionIndex activeIndex;
+    private final LiveSessionBroadcaster broadcaster;
+    private final DashboardCache cache;
+    private final SessionDataVersion dataVersion;
+
+    public DashboardController(GameSessionRepository sessionRepo, PlaytimeAggregates aggregates,
+            ConcurrencyHistogram histogram, ActiveSessionIndex activeIndex, LiveSessionBroadcaster broadcaster,
+            DashboardCache cache, SessionDataVersion dataVersion) {
         this.sessionRepo = sessionRepo;
+        this.aggregates = aggregates;
+        this.histogram = histogram;
+        this.activeIndex = activeIndex;
+        this.broadcaster = broadcaster;
+        this.cache = cache;
+        this.dataVersion = dataVersion;
     }
 
     @GetMapping("/")
@@ -38,45 +67,45 @@ public class DashboardController {
 
     @GetMapping("/games/table")
     public String getCurrentSessions(Model model) {
-        List<GameSession> sessions = sessionRepo.findByActiveTrue();
-        Instant now = Instant.now();
-
-        List<Map<String, String>> formatted = sessions.stream().map(session -> {
-            Duration total = session.getTotalDuration()
-                    .plus(Duration.between(session.getStartTime(), now));
-
-            Map<String, String> entry = new HashMap<>();
-            entry.put("username", session.getUsername());
-            entry.put("game", session.getGame());
-            entry.put("duration", formatDuration(total));
-            return entry;
-        }).collect(Collectors.toList());
+        List<Map<String, String>> formatted = cache.get("table", () -> {
+            Collection<GameSession> sessions = activeIndex.all();
+            Instant now = Instant.now();
+
+            return sessions.stream().map(session -> {
+                Duration total = session.getTotalDuration()
+                        .plus(Duration.between(session.getStartTime(), now));
+
+                Map<String, String> entry = new HashMap<>();
+                entry.put("username", session.getUsername());
+                entry.put("game", session.getGame());
+                entry.put("duration", formatDuration(total));
+                return entry;
+            }).collect(Collectors.toList());
+        });
 
         model.addAttribute("sessions", formatted);
         return "fragments/gameTable";
     }
 
+    // Live session start/stop deltas; the client keeps the durations ticking
+    @GetMapping(path = "/games/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public SseEmitter streamLiveSessions() {
+        return broadcaster.subscribe();
+    }
+
     @GetMapping("/games/leaderboard")
     public String getLeaderboard(Model model) {
-        List<GameSession> allSessions = sessionRepo.findAll();
-        Instant now = Instant.now();
-
-        Map<String, Duration> totals = new HashMap<>();
-
-        for (GameSession session : allSessions) {
-            Duration d = session.getTotalDuration();
-            if (session.isActive()) {
-                d = d.plus(Duration.between(session.getStartTime(), now));
-            }
-            totals.merge(session.getGame(), d, Duration::plus);
-        }
+        List<Map<String, String>> leaderboard = cache.get("leaderboard", () -> {
+            Map<String, Duration> totals = aggregates.totalsByGame(Instant.now());
 
-        List<Map<String, String>> leaderboard = totals.entrySet().stream()
-                .sorted((a, b) -> b.getValue().compareTo(a.getValue()))
-                .map(e -> Map.of(
-                        "game", e.getKey(),
-                        "duration", formatDuration(e.getValue())))
-                .toList();
+            return totals.entrySet().stream()
+                    .sorted((a, b) -> b.getValue().compareTo(a.getValue()))
+                    .map(e -> Map.of(
+                            "game", e.getKey(),
+                            "duration", formatDuration(e.getValue())))
+                    .toList();
+        });
 
         model.addAttribute("leaderboard", leaderboard);
         return "fragments/leaderboard";
@@ -91,45 +120,33 @@ public class DashboardController {
 
     @GetMapping("/games/stats/game-distribution")
     @ResponseBody
-    public Map<String, Long> getGamePlaytimeDistribution() {
-        List<GameSession> allSessions = sessionRepo.findAll();
-        Instant now = Instant.now();
-
-        Map<String, Duration> totals = new HashMap<>();
-        for (GameSession session : allSessions) {
-            Duration d = session.getTotalDuration();
-            if (session.isActive()) {
-                d = d.plus(Duration.between(session.getStartTime(), now));
-            }
-            totals.merge(session.getGame(), d, Duration::plus);
-        }
-
-        return totals.entrySet().stream()
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        e -> e.getValue().toMinutes()));
+    public Map<String, Long> getGamePlaytimeDistribution(WebRequest request, HttpServletResponse response) {
+        // Values are whole minutes, so the live part only changes once a minute
+        if (notModified(request, response, "game-distribution", 60, false))
+            return null;
+
+        return cache.get("game-distribution", () -> {
+            Map<String, Duration> totals = aggregates.totalsByGame(Instant.now());
+
+            return totals.entrySet().stream()
+                    .collect(Collectors.toMap(
+                            Map.Entry::getKey,
+                            e -> e.getValue().toMinutes()));
+        });
     }
 
     @GetMapping("/games/stats/user-leaderboard")
-    public String getUserLeaderboard(Model model) {
-        List<GameSession> sessions = sessionRepo.findAll();
-        Instant now = Instant.now();
-
-        Map<String, Duration> totals = new HashMap<>();
-        for (GameSession session : sessions) {
-            Duration d = session.getTotalDuration();
-            if (session.isActive()) {
-                d = d.plus(Duration.between(session.getStartTime(), now));
-            }
-            totals.merge(session.getUsername(), d, Duration::plus);
-        }
-
-        List<Map<String, String>> leaderboard = totals.entrySet().stream()
-                .sorted((a, b) -> b.getValue().compareTo(a.getValue()))
-                .map(e -> Map.of(
-                        "username", e.getKey(),
-                        "duration", formatDuration(e.getValue())))
-                .toList();
+    public String getUserLeaderboard(
+            @RequestParam(name = "limit", defaultValue = "50") int limit,
+            Model model) {
+
+        int top = Math.max(1, Math.min(limit, 500));
+        List<Map<String, String>> leaderboard = cache.get("user-leaderboard:" + top,
+                () -> aggregates.topUsers(top, Instant.now()).stream()
+                        .map(u -> Map.of(
+                                "username", u.username(),
+                                "duration", formatDuration(u.total())))
+                        .toList());
 
         model.addAttribute("leaderboard", leaderboard);
         return "fragments/userLeaderboard";
@@ -138,108 +155,162 @@ public class DashboardController {
     @GetMapping("/games/stats/peak-concurrency")
     @ResponseBody
     public Map<Long, Integer> getPeakConcurrency(
-            @RequestParam(name = "bucketSeconds", defaultValue = "60") int bucketSeconds) {
+            @RequestParam(name = "bucketSeconds", defaultValue = "60") int bucketSeconds,
+            @RequestParam(name = "from", required = false) Long fromMillis,
+            @RequestParam(name = "to", required = false) Long toMillis,
+            WebRequest request, HttpServletResponse response) {
+
+        // A defaulted or future `to` is clamped to now, so the window moves with the clock
+        boolean sliding = toMillis == null || toMillis > System.currentTimeMillis();
+        if (notModified(request, response, "peak-concurrency", ConcurrencyHistogram.BASE_SECONDS, sliding))
+            return null;
+
+        return cache.get("peak-concurrency:" + bucketSeconds + ":" + fromMillis + ":" + toMillis,
+                () -> computePeakConcurrency(bucketSeconds, fromMillis, toMillis));
+    }
 
-        bucketSeconds = Math.max(30, Math.min(bucketSeconds, 900));
+    private Map<Long, Integer> computePeakConcurrency(int bucketSeconds, Long fromMillis, Long toMillis) {
+        // Multiples of the 30s base resolution so buckets can be rolled up exactly
+        int base = ConcurrencyHistogram.BASE_SECONDS;
+        bucketSeconds = Math.max(base, Math.min(bucketSeconds, 900)) / base * base;
         Instant now = Instant.now();
 
-        // 1) collect intervals per user
-        Map<String, List<Range>> byUser = new HashMap<>();
-        for (GameSession s : sessionRepo.findAll()) {
-            Instant a = s.getStartTime();
-            Instant b = s.isActive() ? now : a.plus(s.getTotalDuration());
-            if (b.isAfter(a)) {
-                byUser.computeIfAbsent(s.getUsername(), k -> new ArrayList<>())
-                        .add(new Range(a, b));
-            }
-        }
+        Instant to = toMillis == null ? now : Instant.ofEpochMilli(toMillis);
+        if (to.isAfter(now))
+            to = now;
+        Instant from = fromMillis == null ? to.minus(Duration.ofDays(1)) : Instant.ofEpochMilli(fromMillis);
+        if (from.isBefore(to.minus(ConcurrencyHistogram.MAX_WINDOW)))
+            from = to.minus(ConcurrencyHistogram.MAX_WINDOW);
 
-        // 2) merge per user to avoid double counting
-        List<Range> mergedAll = new ArrayList<>();
-        for (List<Range> list : byUser.values()) {
-            list.sort(Comparator.comparing(r -> r.start));
-            Instant ms = null, me = null;
-            for (Range r : list) {
-                if (ms == null) {
-                    ms = r.start;
-                    me = r.end;
-                    continue;
-                }
-                if (!r.start.isAfter(me)) { // overlap or touch
-                    if (r.end.isAfter(me))
-                        me = r.end;
-                } else {
-                    mergedAll.add(new Range(ms, me));
-                    ms = r.start;
-                    me = r.end;
-                }
-            }
-            if (ms != null)
-                mergedAll.add(new Range(ms, me));
-        }
+        return histogram.peaks(from, to, bucketSeconds, now);
+    }
+
+    @GetMapping("/games/stats/session-timeline")
+    @ResponseBody
+    public SessionTimelinePageDTO getSessionTimeline(
+            @RequestParam(name = "from", required = false) Long fromMillis,
+            @RequestParam(name = "to", required = false) Long toMillis,
+            @RequestParam(name = "user", required = false) String user,
+            @RequestParam(name = "game", required = false) String game,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "limit", defaultValue = "500") int limit,
+            WebRequest request, HttpServletResponse response) {
+
+        if (notModified(request, response, "session-timeline", 30, toMillis == null))
+            return null;
+
+        String key = String.join(":", "session-timeline", String.valueOf(fromMillis), String.valueOf(toMillis),
+                String.valueOf(user), String.valueOf(game), String.valueOf(cursor), String.valueOf(limit));
+        return cache.get(key, () -> computeSessionTimeline(fromMillis, toMillis, user, game, cursor, limit));
+    }
 
-        // 3) sweep with correct bucket boundaries
-        NavigableMap<Instant, Integer> events = new TreeMap<>();
-        for (Range r : mergedAll) {
-            Instant a = floor(r.start, bucketSeconds); // inclusive
-            Instant b = ceil(r.end, bucketSeconds); // exclusive
-            events.merge(a, 1, Integer::sum);
-            events.merge(b, -1, Integer::sum);
+    private SessionTimelinePageDTO computeSessionTimeline(Long fromMillis, Long toMillis, String user, String game,
+            String cursor, int limit) {
+        limit = Math.max(1, Math.min(limit, 2000));
+        Instant now = Instant.now();
+        Instant to = toMillis == null ? now : Instant.ofEpochMilli(toMillis);
+        Instant from = fromMillis == null ? to.minus(Duration.ofDays(1)) : Instant.ofEpochMilli(fromMillis);
+
+        // Resume strictly after the last (startTime, id) of the previous page
+        Instant afterStart = null;
+        long afterId = -1;
+        if (cursor != null) {
+            TimelineCursor c = TimelineCursor.decode(cursor);
+            afterStart = c.startTime();
+            afterId = c.id();
         }
 
-        // 4) expand to uniform buckets
-        Map<Long, Integer> out = new LinkedHashMap<>();
-        if (events.isEmpty())
-            return out;
-        Instant t = events.firstKey();
-        int running = 0;
-        while (true) {
-            running += events.getOrDefault(t, 0);
-            out.put(t.getEpochSecond() * 1000L, Math.max(0, running));
-            Instant next = t.plusSeconds(bucketSeconds);
-            if (next.isAfter(Instant.now()))
-                break;
-            t = next;
+        // Read before the page so changes racing with it are replayed by the changes endpoint
+        long started = System.nanoTime();
+        Long changeSeq = sessionRepo.findMaxChangeSeq();
+
+        // One extra row tells whether another page follows
+        List<TimelineRow> sessions = sessionRepo.findTimelinePage(aggregates.earliestStartOverlapping(from), from,
+                to, blankToNull(user), blankToNull(game), afterStart, afterId, PageRequest.of(0, limit + 1));
+        RequestStats.recordQuery(sessions.size(), System.nanoTime() - started);
+        boolean more = sessions.size() > limit;
+        if (more) {
+            sessions = sessions.subList(0, limit);
         }
-        return out;
+
+        List<SessionTimelineDTO> items = sessions.stream()
+                .map(s -> toTimelineDto(s, now))
+                .collect(Collectors.toList());
+
+        TimelineRow last = sessions.isEmpty() ? null : sessions.get(sessions.size() - 1);
+        String nextCursor = more ? new TimelineCursor(last.startTime(), last.id()).encode() : null;
+        return new SessionTimelinePageDTO(items, nextCursor, changeSeq == null ? 0 : changeSeq);
     }
 
-    private static Instant floor(Instant x, int s) {
-        long e = x.getEpochSecond();
-        return Instant.ofEpochSecond((e / s) * s);
+    @GetMapping("/games/stats/session-timeline/changes")
+    @ResponseBody
+    public SessionChangesDTO getSessionTimelineChanges(
+            @RequestParam(name = "since") long since,
+            @RequestParam(name = "limit", defaultValue = "500") int limit) {
+
+        int max = Math.max(1, Math.min(limit, 2000));
+        return cache.get("session-timeline-changes:" + since + ":" + max, () -> {
+            Instant now = Instant.now();
+            long started = System.nanoTime();
+            List<TimelineRow> sessions = sessionRepo.findChangesAfter(since, PageRequest.of(0, max + 1));
+            RequestStats.recordQuery(sessions.size(), System.nanoTime() - started);
+            boolean more = sessions.size() > max;
+            if (more) {
+                sessions = sessions.subList(0, max);
+            }
+
+            List<SessionTimelineDTO> items = sessions.stream()
+                    .map(s -> toTimelineDto(s, now))
+                    .collect(Collectors.toList());
+            long next = sessions.isEmpty() ? since : sessions.get(sessions.size() - 1).changeSeq();
+            return new SessionChangesDTO(items, next, more);
+        });
     }
 
-    private static Instant ceil(Instant x, int s) {
-        long e = x.getEpochSecond();
-        return Instant.ofEpochSecond(((e + s - 1) / s) * s);
+    private static SessionTimelineDTO toTimelineDto(TimelineRow s, Instant now) {
+        Instant end = s.active() ? now : s.endTime();
+        return new SessionTimelineDTO(
+                s.id(),
+                s.username(),
+                s.game(),
+                s.startTime(),
+                end,
+                s.active());
     }
 
-    private static class Range {
-        final Instant start, end;
+    // Answers 304 before any data access when the client already holds the current representation.
+    // The tag covers the data version and, while sessions are live or the requested window slides with
+    // the clock, the current slot of liveSeconds.
+    private boolean notModified(WebRequest request, HttpServletResponse response, String name, int liveSeconds,
+            boolean slidingWindow) {
+        boolean moving = slidingWindow || activeIndex.size() > 0;
+        long slot = moving ? Instant.now().getEpochSecond() / liveSeconds : 0;
+        String etag = "\"" + name + "-" + dataVersion.tag() + "-" + slot + "\"";
+        // Make browsers revalidate on every fetch so If-None-Match is actually sent
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        return request.checkNotModified(etag);
+    }
 
-        Range(Instant s, Instant e) {
-            this.start = s;
-            this.end = e;
-        }
+    private static String blankToNull(String s) {
+        return s == null || s.isBlank() ? null : s;
     }
 
-    @GetMapping("/games/stats/session-timeline")
-    @ResponseBody
-    public List<SessionTimelineDTO> getSessionTimeline() {
-        List<GameSession> sessions = sessionRepo.findAll();
-        Instant now = Instant.now();
+    private record TimelineCursor(Instant startTime, long id) {
 
-        return sessions.stream()
-                .filter(s -> s.getStartTime() != null)
-                .map(s -> {
-                    Instant end = s.isActive() ? now : s.getStartTime().plus(s.getTotalDuration());
-                    return new SessionTimelineDTO(
-                            s.getUsername(),
-                            s.getGame(),
-                            s.getStartTime(),
-                            end);
-                })
-                .collect(Collectors.toList());
+        String encode() {
+            String raw = startTime + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static TimelineCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int sep = raw.indexOf('|');
+                return new TimelineCursor(Instant.parse(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+            } catch (RuntimeException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor", e);
+            }
+        }
     }
 
-}
\ No newline at end of file
+}
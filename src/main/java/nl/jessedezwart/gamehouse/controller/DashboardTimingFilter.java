@@ -0,0 +1,86 @@
+package nl.jessedezwart.gamehouse.controller;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+// Per-mapping latency, payload size and rows loaded for dashboard endpoints, as metrics and as a
+// Server-Timing header. The body is buffered so its size is known before the headers go out.
+@Component
+public class DashboardTimingFilter extends OncePerRequestFilter {
+
+    private final MeterRegistry registry;
+
+    public DashboardTimingFilter(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    // Only dashboard data endpoints; the SSE stream must not be buffered
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !path.startsWith("/games/") || path.equals("/games/live");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        RequestStats stats = RequestStats.begin();
+        long started = System.nanoTime();
+        try {
+            chain.doFilter(request, wrapper);
+        } finally {
+            RequestStats.end();
+            long nanos = System.nanoTime() - started;
+            int bytes = wrapper.getContentSize();
+            record(request, wrapper.getStatus(), nanos, bytes, stats);
+
+            if (!wrapper.isCommitted()) {
+                wrapper.setHeader("Server-Timing", String.format(Locale.ROOT,
+                        "app;dur=%.1f, db;dur=%.1f;desc=\"%d rows\", size;desc=\"%d bytes\"",
+                        nanos / 1e6, stats.dbNanos() / 1e6, stats.rows(), bytes));
+            }
+            wrapper.copyBodyToResponse();
+        }
+    }
+
+    private void record(HttpServletRequest request, int status, long nanos, int bytes, RequestStats stats) {
+        // Mapping pattern rather than the raw URI, so query strings do not create new series
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String endpoint = pattern != null ? pattern.toString() : "UNMAPPED";
+        String outcome = String.valueOf(status);
+
+        Timer.builder("gamehouse.dashboard.request")
+                .description("Dashboard endpoint latency including view rendering")
+                .tag("endpoint", endpoint)
+                .tag("status", outcome)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("gamehouse.dashboard.response.size")
+                .description("Serialized response body size")
+                .baseUnit("bytes")
+                .tag("endpoint", endpoint)
+                .register(registry)
+                .record(bytes);
+        DistributionSummary.builder("gamehouse.dashboard.rows.loaded")
+                .description("GameSession rows loaded from the database per request")
+                .tag("endpoint", endpoint)
+                .register(registry)
+                .record(stats.rows());
+    }
+}
@@ -0,0 +1,41 @@
+package nl.jessedezwart.gamehouse.controller;
+
+// Database work done while serving the current dashboard request, filled in by the controller and read by
+// DashboardTimingFilter. Cache hits load nothing, so the numbers show what a request actually cost.
+public final class RequestStats {
+
+    private static final ThreadLocal<RequestStats> CURRENT = new ThreadLocal<>();
+
+    private long rows;
+    private long dbNanos;
+
+    private RequestStats() {
+    }
+
+    static RequestStats begin() {
+        RequestStats stats = new RequestStats();
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    static void end() {
+        CURRENT.remove();
+    }
+
+    // No-op outside a filtered request, e.g. when called from a background thread
+    static void recordQuery(long rows, long nanos) {
+        RequestStats stats = CURRENT.get();
+        if (stats != null) {
+            stats.rows += rows;
+            stats.dbNanos += nanos;
+        }
+    }
+
+    long rows() {
+        return rows;
+    }
+
+    long dbNanos() {
+        return dbNanos;
+    }
+}
@@ -0,0 +1,21 @@
+package nl.jessedezwart.gamehouse.dto;
+
+import java.time.Instant;
+
+public class LiveSessionDTO {
+    // Stable while the session is active: discordUserId|game
+    public String key;
+    public String username;
+    public String game;
+    public Instant start;
+    // Duration accumulated before start, added to the client-side ticking clock
+    public long priorSeconds;
+
+    public LiveSessionDTO(String key, String username, String game, Instant start, long priorSeconds) {
+        this.key = key;
+        this.username = username;
+        this.game = game;
+        this.start = start;
+        this.priorSeconds = priorSeconds;
+    }
+}
@@ -0,0 +1,18 @@
+package nl.jessedezwart.gamehouse.dto;
+
+import java.util.List;
+
+public class SessionChangesDTO {
+    // Sessions created, closed or updated after the requested sequence, oldest change first
+    public List<SessionTimelineDTO> items;
+    // Pass as since on the next call
+    public long changeSeq;
+    // True when more changes are waiting beyond this batch
+    public boolean more;
+
+    public SessionChangesDTO(List<SessionTimelineDTO> items, long changeSeq, boolean more) {
+        this.items = items;
+        this.changeSeq = changeSeq;
+        this.more = more;
+    }
+}
@@ -3,15 +3,19 @@ package nl.jessedezwart.gamehouse.dto;
 import java.time.Instant;
 
 public class SessionTimelineDTO {
+    public Long id;
     public String username;
     public String game;
     public Instant start;
     public Instant end;
+    public boolean active;
 
-    public SessionTimelineDTO(String username, String game, Instant start, Instant end) {
+    public SessionTimelineDTO(Long id, String username, String game, Instant start, Instant end, boolean active) {
+        this.id = id;
         this.username = username;
         this.game = game;
         this.start = start;
         this.end = end;
+        this.active = active;
     }
 }
@@ -0,0 +1,17 @@
+package nl.jessedezwart.gamehouse.dto;
+
+import java.util.List;
+
+public class SessionTimelinePageDTO {
+    public List<SessionTimelineDTO> items;
+    // Opaque cursor for the next page, null on the last page
+    public String nextCursor;
+    // Change sequence read before the page; pass as since to the changes endpoint
+    public long changeSeq;
+
+    public SessionTimelinePageDTO(List<SessionTimelineDTO> items, String nextCursor, long changeSeq) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+        this.changeSeq = changeSeq;
+    }
+}
@@ -6,10 +6,20 @@ import java.time.Instant;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 import lombok.Getter;
 import lombok.Setter;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_game_session_user_active", columnList = "discordUserId, active"),
+        @Index(name = "idx_game_session_active", columnList = "active"),
+        @Index(name = "idx_game_session_start", columnList = "startTime"),
+        @Index(name = "idx_game_session_end", columnList = "endTime"),
+        @Index(name = "idx_game_session_game_start", columnList = "game, startTime"),
+        @Index(name = "idx_game_session_change_seq", columnList = "changeSeq")
+})
 @Getter
 @Setter
 public class GameSession {
@@ -21,5 +31,9 @@ public class GameSession {
     private String game;
     private Instant startTime;
     private Duration totalDuration;
+    // Set when the session closes; null while active
+    private Instant endTime;
+    // Stamped from SessionChangeSequence on every write
+    private Long changeSeq;
     private boolean active;
 }
@@ -0,0 +1,9 @@
+package nl.jessedezwart.gamehouse.event;
+
+import java.time.Instant;
+
+import nl.jessedezwart.gamehouse.entity.GameSession;
+
+// Published after a session has been closed and removed from the active index
+public record SessionClosedEvent(GameSession session, Instant closedAt) {
+}
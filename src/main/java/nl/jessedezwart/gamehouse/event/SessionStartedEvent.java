@@ -0,0 +1,7 @@
+package nl.jessedezwart.gamehouse.event;
+
+import nl.jessedezwart.gamehouse.entity.GameSession;
+
+// Published after a session has been opened and added to the active index
+public record SessionStartedEvent(GameSession session) {
+}
@@ -0,0 +1,9 @@
+package nl.jessedezwart.gamehouse.repository;
+
+import java.time.Duration;
+import java.time.Instant;
+
+// Columns of a closed session needed to rebuild the in-memory aggregates; endTime may be null on old rows
+public record ClosedSessionRow(String discordUserId, String username, String game, Instant startTime,
+        Duration totalDuration, Instant endTime) {
+}
@@ -1,13 +1,82 @@
 package nl.jessedezwart.gamehouse.repository;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import jakarta.persistence.QueryHint;
 import nl.jessedezwart.gamehouse.entity.GameSession;
 
 public interface GameSessionRepository extends JpaRepository<GameSession, Long> {
-    List<GameSession> findByActiveTrue();
+    // Active rows the index can hold; legacy rows with a null user, game, start or total are left out
+    @Query("""
+            select s from GameSession s
+            where s.active = true
+              and s.discordUserId is not null and s.game is not null
+              and s.startTime is not null and s.totalDuration is not null
+            """)
+    List<GameSession> findActiveWithRequiredColumns();
+
+    // Rows missing the start or total (legacy nullable columns) cannot be backfilled and are left alone
+    List<GameSession> findTop500ByActiveFalseAndEndTimeIsNullAndStartTimeIsNotNullAndTotalDurationIsNotNull();
 
     List<GameSession> findAllByDiscordUserIdAndActiveTrue(String userId);
+
+    boolean existsByDiscordUserIdNotLike(String pattern);
+
+    @Query("select max(s.changeSeq) from GameSession s")
+    Long findMaxChangeSeq();
+
+    // Read paths below return plain records: no managed entities, no dirty-checking snapshots
+
+    // Every closed session in start order; must be consumed inside a read-only transaction.
+    // Legacy rows with a null user, game, start or total are skipped; the schema allowed them.
+    @Query("""
+            select new nl.jessedezwart.gamehouse.repository.ClosedSessionRow(
+                s.discordUserId, s.username, s.game, s.startTime, s.totalDuration, s.endTime)
+            from GameSession s
+            where s.active = false
+              and s.discordUserId is not null and s.game is not null
+              and s.startTime is not null and s.totalDuration is not null
+            order by s.startTime
+            """)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    Stream<ClosedSessionRow> streamClosedByStartTime();
+
+    @Query("""
+            select new nl.jessedezwart.gamehouse.repository.TimelineRow(
+                s.id, s.username, s.game, s.startTime, s.endTime, s.active, s.changeSeq)
+            from GameSession s
+            where s.changeSeq > :changeSeq
+            order by s.changeSeq
+            """)
+    @Transactional(readOnly = true)
+    List<TimelineRow> findChangesAfter(@Param("changeSeq") long changeSeq, Pageable page);
+
+    // Keyset page of sessions overlapping [from, to), ordered by (startTime, id) and resuming after the cursor.
+    // minStart is the earliest start any overlapping session can have, so the start_time index range is bounded
+    @Query("""
+            select new nl.jessedezwart.gamehouse.repository.TimelineRow(
+                s.id, s.username, s.game, s.startTime, s.endTime, s.active, s.changeSeq)
+            from GameSession s
+            where s.startTime >= :minStart and s.startTime < :to and (s.active = true or s.endTime > :from)
+              and (:user is null or s.discordUserId = :user or s.username = :user)
+              and (:game is null or s.game = :game)
+              and (:afterStart is null or s.startTime > :afterStart
+                   or (s.startTime = :afterStart and s.id > :afterId))
+            order by s.startTime, s.id
+            """)
+    @Transactional(readOnly = true)
+    List<TimelineRow> findTimelinePage(@Param("minStart") Instant minStart, @Param("from") Instant from,
+            @Param("to") Instant to,
+            @Param("user") String user, @Param("game") String game,
+            @Param("afterStart") Instant afterStart, @Param("afterId") long afterId, Pageable page);
 }
@@ -0,0 +1,8 @@
+package nl.jessedezwart.gamehouse.repository;
+
+import java.time.Instant;
+
+// Columns of a session shown on the timeline, plus its change sequence for the changes feed
+public record TimelineRow(Long id, String username, String game, Instant startTime, Instant endTime,
+        boolean active, Long changeSeq) {
+}
@@ -0,0 +1,109 @@
+package nl.jessedezwart.gamehouse.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import nl.jessedezwart.gamehouse.entity.GameSession;
+import nl.jessedezwart.gamehouse.repository.GameSessionRepository;
+
+// Authoritative in-memory view of all active sessions, keyed by (discordUserId, game)
+@Component
+public class ActiveSessionIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ActiveSessionIndex.class);
+
+    private final GameSessionRepository sessionRepo;
+    private final SessionChangeSequence changeSequence;
+
+    // discordUserId -> game -> active session
+    private final Map<String, Map<String, GameSession>> byUser = new ConcurrentHashMap<>();
+
+    // discordUserId -> System.nanoTime() of the user's last session transition
+    private final Map<String, Long> lastTransition = new ConcurrentHashMap<>();
+
+    public ActiveSessionIndex(GameSessionRepository sessionRepo, SessionChangeSequence changeSequence) {
+        this.sessionRepo = sessionRepo;
+        this.changeSequence = changeSequence;
+    }
+
+    @PostConstruct
+    public void load() {
+        int duplicates = 0;
+        List<GameSession> active = new ArrayList<>(sessionRepo.findActiveWithRequiredColumns());
+        active.sort(Comparator.comparing(GameSession::getStartTime));
+        for (GameSession s : active) {
+            if (!add(s)) {
+                // Duplicate rows for the same game are possible in old data; keep the earliest
+                s.setActive(false);
+                s.setEndTime(s.getStartTime().plus(s.getTotalDuration()));
+                s.setChangeSeq(changeSequence.next());
+                sessionRepo.save(s);
+                duplicates++;
+            }
+        }
+        if (duplicates > 0) {
+            log.warn("Closed {} duplicate active session(s) while loading the index", duplicates);
+        }
+        log.info("Loaded {} active session(s) for {} user(s)", size(), byUser.size());
+    }
+
+    // Registers an active session; returns false when the user already has one for that game
+    public boolean add(GameSession session) {
+        Map<String, GameSession> games = byUser.computeIfAbsent(session.getDiscordUserId(),
+                k -> new ConcurrentHashMap<>());
+        if (games.putIfAbsent(session.getGame(), session) != null)
+            return false;
+        lastTransition.put(session.getDiscordUserId(), System.nanoTime());
+        return true;
+    }
+
+    public void remove(GameSession session) {
+        byUser.computeIfPresent(session.getDiscordUserId(), (k, games) -> {
+            games.remove(session.getGame(), session);
+            return games.isEmpty() ? null : games;
+        });
+        lastTransition.put(session.getDiscordUserId(), System.nanoTime());
+    }
+
+    // Whether a session of the user opened or closed after the given System.nanoTime()
+    public boolean changedSince(String userId, long nanos) {
+        Long last = lastTransition.get(userId);
+        return last != null && last - nanos > 0;
+    }
+
+    // Forgets transitions no observation taken at or after the given System.nanoTime() can conflict with
+    public void forgetTransitionsBefore(long nanos) {
+        lastTransition.values().removeIf(last -> last - nanos < 0);
+    }
+
+    // Snapshot of the user's active sessions by game
+    public Map<String, GameSession> sessionsOf(String userId) {
+        Map<String, GameSession> games = byUser.get(userId);
+        return games == null ? Map.of() : Map.copyOf(games);
+    }
+
+    // Users with at least one active session
+    public Set<String> userIds() {
+        return Set.copyOf(byUser.keySet());
+    }
+
+    public Collection<GameSession> all() {
+        List<GameSession> out = new ArrayList<>();
+        byUser.values().forEach(games -> out.addAll(games.values()));
+        return out;
+    }
+
+    public int size() {
+        return byUser.values().stream().mapToInt(Map::size).sum();
+    }
+}
@@ -0,0 +1,159 @@
+package nl.jessedezwart.gamehouse.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import nl.jessedezwart.gamehouse.entity.GameSession;
+import nl.jessedezwart.gamehouse.event.SessionClosedEvent;
+import nl.jessedezwart.gamehouse.event.SessionStartedEvent;
+import nl.jessedezwart.gamehouse.repository.ClosedSessionRow;
+
+// Number of distinct users playing per 30s bucket, maintained as sessions open and close.
+// Filled at startup by SessionHistoryLoader.
+@Component
+public class ConcurrencyHistogram {
+
+    private static final Logger log = LoggerFactory.getLogger(ConcurrencyHistogram.class);
+
+    public static final int BASE_SECONDS = 30;
+
+    // Widest window a single query may cover
+    public static final Duration MAX_WINDOW = Duration.ofDays(31);
+
+    private static final int DAY_SECONDS = 86_400;
+    private static final int BUCKETS_PER_DAY = DAY_SECONDS / BASE_SECONDS;
+
+    private final ActiveSessionIndex activeIndex;
+
+    // epoch day -> users online per base bucket of that day, about 11 KB per day anyone played on
+    private final Map<Long, AtomicIntegerArray> days = new ConcurrentHashMap<>();
+
+    // discordUserId -> start of the user's current stretch with at least one active session
+    private final Map<String, Instant> onlineSince = new ConcurrentHashMap<>();
+
+    // discordUserId -> last base bucket already counted, so back-to-back stretches count a user once
+    private final Map<String, Long> lastCounted = new ConcurrentHashMap<>();
+
+    public ConcurrencyHistogram(ActiveSessionIndex activeIndex) {
+        this.activeIndex = activeIndex;
+    }
+
+    // count() needs each user's sessions in start order, which is the order the loader streams them in
+    void addLoaded(ClosedSessionRow r) {
+        Instant end = r.endTime() != null ? r.endTime() : r.startTime().plus(r.totalDuration());
+        count(r.discordUserId(), r.startTime(), end);
+    }
+
+    void loadActive() {
+        for (GameSession s : activeIndex.all()) {
+            onlineSince.merge(s.getDiscordUserId(), s.getStartTime(), (a, b) -> a.isBefore(b) ? a : b);
+        }
+        log.info("Loaded concurrency histogram covering {} day(s), {} user(s) online", days.size(),
+                onlineSince.size());
+    }
+
+    @EventListener
+    public void onSessionStarted(SessionStartedEvent event) {
+        GameSession s = event.session();
+        onlineSince.putIfAbsent(s.getDiscordUserId(), s.getStartTime());
+    }
+
+    @EventListener
+    public void onSessionClosed(SessionClosedEvent event) {
+        String userId = event.session().getDiscordUserId();
+        // The stretch only ends once the user's last active session is gone
+        if (!activeIndex.sessionsOf(userId).isEmpty())
+            return;
+        Instant since = onlineSince.remove(userId);
+        if (since != null) {
+            count(userId, since, event.closedAt());
+        }
+    }
+
+    // Adds the user to every base bucket touched by [from, to) that was not counted for them yet
+    private void count(String userId, Instant from, Instant to) {
+        if (!to.isAfter(from))
+            return;
+        long first = floor(from.getEpochSecond(), BASE_SECONDS);
+        long end = ceil(to.getEpochSecond(), BASE_SECONDS);
+        Long last = lastCounted.get(userId);
+        if (last != null) {
+            first = Math.max(first, last + BASE_SECONDS);
+        }
+        AtomicIntegerArray buckets = null;
+        long bucketsDay = Long.MIN_VALUE;
+        for (long t = first; t < end; t += BASE_SECONDS) {
+            long day = Math.floorDiv(t, DAY_SECONDS);
+            if (day != bucketsDay) {
+                buckets = days.computeIfAbsent(day, d -> new AtomicIntegerArray(BUCKETS_PER_DAY));
+                bucketsDay = day;
+            }
+            buckets.incrementAndGet((int) ((t - day * DAY_SECONDS) / BASE_SECONDS));
+        }
+        if (end > first) {
+            lastCounted.put(userId, end - BASE_SECONDS);
+        }
+    }
+
+    // Peak concurrency per bucket of bucketSeconds (a multiple of 30) for [from, to], keyed by epoch millis
+    public Map<Long, Integer> peaks(Instant from, Instant to, int bucketSeconds, Instant now) {
+        long fromSec = floor(from.getEpochSecond(), bucketSeconds);
+        long toSec = floor(to.getEpochSecond(), bucketSeconds) + bucketSeconds;
+        Map<Long, Integer> out = new LinkedHashMap<>();
+        if (toSec <= fromSec)
+            return out;
+
+        int[] base = new int[(int) ((toSec - fromSec) / BASE_SECONDS)];
+        for (long day = Math.floorDiv(fromSec, DAY_SECONDS); day * DAY_SECONDS < toSec; day++) {
+            AtomicIntegerArray buckets = days.get(day);
+            if (buckets == null)
+                continue;
+            long dayStart = day * DAY_SECONDS;
+            long dayEnd = Math.min(toSec, dayStart + DAY_SECONDS);
+            for (long t = Math.max(fromSec, dayStart); t < dayEnd; t += BASE_SECONDS) {
+                base[(int) ((t - fromSec) / BASE_SECONDS)] += buckets.get((int) ((t - dayStart) / BASE_SECONDS));
+            }
+        }
+
+        // Users who are still playing have not been counted yet
+        long nowEnd = ceil(now.getEpochSecond(), BASE_SECONDS);
+        for (Map.Entry<String, Instant> e : onlineSince.entrySet()) {
+            long first = floor(e.getValue().getEpochSecond(), BASE_SECONDS);
+            Long last = lastCounted.get(e.getKey());
+            if (last != null) {
+                first = Math.max(first, last + BASE_SECONDS);
+            }
+            for (long t = Math.max(first, fromSec); t < Math.min(nowEnd, toSec); t += BASE_SECONDS) {
+                base[(int) ((t - fromSec) / BASE_SECONDS)]++;
+            }
+        }
+
+        // Roll base buckets up into the requested resolution, keeping the peak
+        int perBucket = bucketSeconds / BASE_SECONDS;
+        for (int i = 0; i < base.length; i += perBucket) {
+            int peak = 0;
+            for (int j = i; j < i + perBucket && j < base.length; j++) {
+                peak = Math.max(peak, base[j]);
+            }
+            out.put((fromSec + (long) i * BASE_SECONDS) * 1000L, peak);
+        }
+        return out;
+    }
+
+    private static long floor(long epochSecond, int s) {
+        return Math.floorDiv(epochSecond, s) * s;
+    }
+
+    private static long ceil(long epochSecond, int s) {
+        return -Math.floorDiv(-epochSecond, s) * s;
+    }
+}
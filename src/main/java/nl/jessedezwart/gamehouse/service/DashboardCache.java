@@ -0,0 +1,80 @@
+package nl.jessedezwart.gamehouse.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Shared result cache for dashboard endpoints, invalidated by SessionDataVersion.
+// Concurrent requests for the same key wait on a single computation.
+@Component
+public class DashboardCache {
+
+    private static final int SWEEP_THRESHOLD = 1000;
+
+    private final SessionDataVersion dataVersion;
+
+    // Upper bound on staleness of live durations while the data version is unchanged
+    @Value("${dashboard.cache.ttl-ms:1000}")
+    private long ttlMs;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public DashboardCache(SessionDataVersion dataVersion) {
+        this.dataVersion = dataVersion;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Supplier<T> compute) {
+        long version = dataVersion.current();
+        long now = System.nanoTime();
+        Entry entry = entries.compute(key,
+                (k, old) -> old != null && old.isFresh(version, now, ttlMs) ? old : new Entry(version, now));
+
+        if (entry.claimed.compareAndSet(false, true)) {
+            try {
+                entry.result.complete(compute.get());
+            } catch (RuntimeException | Error e) {
+                entries.remove(key, entry);
+                entry.result.completeExceptionally(e);
+            }
+            if (entries.size() > SWEEP_THRESHOLD) {
+                sweep(version, now);
+            }
+        }
+
+        try {
+            return (T) entry.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re)
+                throw re;
+            throw e;
+        }
+    }
+
+    private void sweep(long version, long now) {
+        entries.values().removeIf(e -> e.result.isDone() && !e.isFresh(version, now, ttlMs));
+    }
+
+    private static final class Entry {
+        final long version;
+        final long createdAt;
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        Entry(long version, long createdAt) {
+            this.version = version;
+            this.createdAt = createdAt;
+        }
+
+        boolean isFresh(long currentVersion, long now, long ttlMs) {
+            return version == currentVersion && now - createdAt < TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        }
+    }
+}
@@ -1,9 +1,8 @@
 package nl.jessedezwart.gamehouse.service;
 
-import java.time.Duration;
 import java.time.Instant;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -12,93 +11,110 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.entities.Activity;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.events.session.ReadyEvent;
+import net.dv8tion.jda.api.events.user.UserActivityEndEvent;
+import net.dv8tion.jda.api.events.user.UserActivityStartEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.sharding.DefaultShardManagerBuilder;
+import net.dv8tion.jda.api.sharding.ShardManager;
 import net.dv8tion.jda.api.utils.ChunkingFilter;
 import net.dv8tion.jda.api.utils.MemberCachePolicy;
 import net.dv8tion.jda.api.utils.cache.CacheFlag;
-import nl.jessedezwart.gamehouse.entity.GameSession;
-import nl.jessedezwart.gamehouse.repository.GameSessionRepository;
 
+// discord.enabled=false runs the dashboard without a gateway connection, e.g. for benchmarks
 @Service
-public class DiscordBotService {
+@ConditionalOnProperty(name = "discord.enabled", matchIfMissing = true)
+public class DiscordBotService extends ListenerAdapter {
 
     private static final Logger log = LoggerFactory.getLogger(DiscordBotService.class);
 
-    private final GameSessionRepository sessionRepo;
+    private final PresenceReconciler reconciler;
 
     @Value("${discord.bot.token}")
     private String token;
 
-    // Tracks non-bot users by ID to display name
-    private final Map<String, String> trackedUsers = new ConcurrentHashMap<>();
+    // Open/close sessions directly from presence events; polling then only reconciles missed events
+    @Value("${discord.presence.events-enabled:true}")
+    private boolean presenceEventsEnabled;
+
+    // Interval of the reconciliation sweep when presence events are enabled
+    @Value("${discord.reconcile.interval-seconds:300}")
+    private int reconcileIntervalSeconds;
+
+    // Same switch as Tomcat's virtual threads; also moves JDA's REST callbacks onto virtual threads.
+    // Gateway events stay on JDA's sequential event thread so presence changes are seen in order.
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    // Presence-only JDA caches: online members with id, name and activities, nothing else
+    @Value("${discord.cache.lean:false}")
+    private boolean leanCache;
+
+    // Sharded mode via ShardManager when above zero; otherwise a single JDA connection.
+    // Every shard runs in this process: the active index, closing unseen users and the change sequence
+    // all assume a single instance owns the database, so shards cannot be split across processes.
+    @Value("${discord.shards.total:0}")
+    private int shardsTotal;
 
     // Single scheduler for polling and periodic tasks
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
 
-    private JDA jda;
+    // JDA callback pool in virtual-thread mode; null keeps JDA's default
+    private ExecutorService workers;
+
+    private volatile JDA jda;
+
+    // Set instead of jda in sharded mode
+    private volatile ShardManager shardManager;
+    private volatile boolean sharded;
 
     @Autowired
-    public DiscordBotService(GameSessionRepository sessionRepo) {
-        this.sessionRepo = sessionRepo;
+    public DiscordBotService(PresenceReconciler reconciler, MeterRegistry registry) {
+        this.reconciler = reconciler;
+        // Gateway-reported member counts; needs no member cache. Not a user count: a user is counted once per
+        // shared guild and bots are included. Distinct users are gamehouse.users.tracked.
+        Gauge.builder("gamehouse.guild.memberships", this,
+                bot -> bot.guilds().stream().mapToLong(Guild::getMemberCount).sum())
+                .description("Guild memberships across connected guilds, one per member per guild, bots included")
+                .register(registry);
     }
 
     @PostConstruct
     public void startBot() {
         try {
-            // Build JDA with presence/member intents and full member/activity cache
-            jda = JDABuilder.createDefault(token)
-                    .enableIntents(GatewayIntent.GUILD_MEMBERS, GatewayIntent.GUILD_PRESENCES)
-                    .setMemberCachePolicy(MemberCachePolicy.ALL)
-                    .enableCache(CacheFlag.ACTIVITY, CacheFlag.ONLINE_STATUS)
-                    .setChunkingFilter(ChunkingFilter.ALL)
-                    .build()
-                    .awaitReady();
-
-            log.info("Discord bot connected as {}", jda.getSelfUser().getAsTag());
-            log.info("Connected to {} guild(s)", jda.getGuilds().size());
-
-            // Initial population of tracked users
-            refreshTrackedUsers("startup");
-
-            // Initial scan after cache warmup
-            scheduler.schedule(() -> {
-                try {
-                    for (Guild guild : jda.getGuilds()) {
-                        scanGuildOnce(guild, "startup-scan");
-                    }
-                } catch (Exception ex) {
-                    log.error("Startup scan failed", ex);
-                }
-            }, 5, TimeUnit.SECONDS);
+            if (virtualThreads) {
+                workers = Executors.newVirtualThreadPerTaskExecutor();
+            }
+            if (shardsTotal > 0) {
+                startSharded();
+            } else {
+                startSingle();
+            }
 
-            // Polling loop to detect active game changes
+            // Polling loop to detect active game changes; a slow reconciliation sweep in event mode
+            int pollSeconds = presenceEventsEnabled ? reconcileIntervalSeconds : 10;
+            log.info("Presence events {}, polling every {}s", presenceEventsEnabled ? "enabled" : "disabled",
+                    pollSeconds);
             scheduler.scheduleAtFixedRate(() -> {
                 try {
-                    for (Guild guild : jda.getGuilds()) {
-                        scanGuildOnce(guild, "poll");
-                    }
+                    scanGuilds("poll", guilds(), TimeUnit.SECONDS.toMillis(pollSeconds), allConnected());
                 } catch (Exception e) {
                     log.error("Polling error", e);
                 }
-            }, 10, 10, TimeUnit.SECONDS);
-
-            // Periodic refresh of tracked users to pick up joins/leaves
-            scheduler.scheduleAtFixedRate(() -> {
-                try {
-                    refreshTrackedUsers("refresh");
-                } catch (Exception e) {
-                    log.error("User refresh error", e);
-                }
-            }, 60, 60, TimeUnit.SECONDS);
-
+            }, pollSeconds, pollSeconds, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             log.error("Discord bot startup was interrupted", e);
@@ -107,89 +123,178 @@ public class DiscordBotService {
         }
     }
 
-    // Loads all non-bot members into trackedUsers
-    private void refreshTrackedUsers(String phase) {
-        int before = trackedUsers.size();
-        for (Guild guild : jda.getGuilds()) {
-            guild.loadMembers().onSuccess(members -> {
-                int added = 0;
-                for (Member member : members) {
-                    if (!member.getUser().isBot()) {
-                        String id = member.getId();
-                        String name = member.getEffectiveName();
-                        if (trackedUsers.put(id, name) == null) {
-                            added++;
-                        }
-                    }
-                }
-                log.info("[{}] Tracked {} users in guild '{}', +{} new", phase, trackedUsers.size(), guild.getName(),
-                        added);
-            }).onError(t -> log.warn("[{}] Failed to load members for guild {}", phase, guild.getName(), t));
+    // Single gateway connection; blocks until every guild is ready
+    private void startSingle() throws InterruptedException {
+        JDABuilder builder = createBuilder();
+        if (workers != null) {
+            builder.setCallbackPool(workers, false);
         }
-        log.debug("[{}] TrackedUsers size before={}, after={}", phase, before, trackedUsers.size());
-    }
-
-    // Single pass that reconciles current activities into GameSession state
-    private void scanGuildOnce(Guild guild, String phase) {
-        Instant now = Instant.now();
-        for (Map.Entry<String, String> entry : trackedUsers.entrySet()) {
-            String userId = entry.getKey();
-            String username = entry.getValue();
-
-            Member member = guild.getMemberById(userId);
-            if (member == null)
-                continue;
-
-            // Set of current PLAYING game names
-            var currentGames = member.getActivities().stream()
-                    .filter(a -> a.getType() == Activity.ActivityType.PLAYING)
-                    .map(Activity::getName)
-                    .filter(n -> n != null && !n.isBlank())
-                    .collect(java.util.stream.Collectors.toSet());
-
-            // All active sessions for this user
-            var activeSessions = sessionRepo.findAllByDiscordUserIdAndActiveTrue(userId);
-
-            // Close sessions for games no longer present
-            for (GameSession s : activeSessions) {
-                if (!currentGames.contains(s.getGame())) {
-                    closeActiveSession(s, now, username);
-                }
-            }
+        builder.addEventListeners(this);
+        jda = builder.build().awaitReady();
+
+        log.info("Discord bot connected as {}", jda.getSelfUser().getAsTag());
+        log.info("Connected to {} guild(s), virtual threads {}", jda.getGuilds().size(),
+                virtualThreads ? "enabled" : "disabled");
+        logCacheFootprint("bot", jda.getGuilds(), jda.getUserCache().size());
 
-            // Refresh active snapshot to avoid duplicates after closures
-            var stillActive = sessionRepo.findAllByDiscordUserIdAndActiveTrue(userId).stream()
-                    .map(GameSession::getGame)
-                    .collect(java.util.stream.Collectors.toSet());
+        // Initial scan after cache warmup
+        scheduleStartupScan("startup-scan", jda, true);
+    }
+
+    // Shards log in in the background; each one starts tracking from onReady, without blocking startup
+    private void startSharded() {
+        DefaultShardManagerBuilder builder = createShardBuilder().setShardsTotal(shardsTotal);
+        if (workers != null) {
+            builder.setCallbackPool(workers, false);
+        }
+        builder.addEventListeners(this);
+        sharded = true;
+        shardManager = builder.build();
+        log.info("Starting {} shard(s), virtual threads {}", shardsTotal, virtualThreads ? "enabled" : "disabled");
+    }
 
-            // Start sessions for newly detected games
-            for (String game : currentGames) {
-                if (!stillActive.contains(game)) {
-                    startNewSession(userId, username, game, now);
+    @Override
+    public void onReady(ReadyEvent event) {
+        if (!sharded)
+            return;
+
+        JDA shard = event.getJDA();
+        String name = "shard " + shard.getShardInfo().getShardId();
+        log.info("Discord {} ready with {} guild(s)", name, shard.getGuilds().size());
+        logCacheFootprint(name, shard.getGuilds(), shard.getUserCache().size());
+        // Other shards may not be ready yet, so this scan cannot tell that a user is in no guild
+        scheduleStartupScan("startup-scan " + name, shard, false);
+    }
+
+    // Scans the connection's guilds once caches warmed up; retried while another cycle is still running
+    private void scheduleStartupScan(String phase, JDA connection, boolean allGuilds) {
+        scheduler.schedule(() -> {
+            try {
+                if (!scanGuilds(phase, connection.getGuilds(), 0, allGuilds)) {
+                    scheduleStartupScan(phase, connection, allGuilds);
                 }
+            } catch (Exception ex) {
+                log.error("Startup scan failed", ex);
             }
+        }, 5, TimeUnit.SECONDS);
+    }
+
+    // Guilds of every connected shard, or of the single connection
+    private List<Guild> guilds() {
+        if (shardManager != null)
+            return shardManager.getGuilds();
+        return jda != null ? jda.getGuilds() : List.of();
+    }
+
+    private JDABuilder createBuilder() {
+        if (leanCache) {
+            // Only presence intents, no caches beyond activity/status, members cached while online,
+            // and guilds filled lazily from presence updates instead of chunking everything at login
+            return JDABuilder.createLight(token, GatewayIntent.GUILD_MEMBERS, GatewayIntent.GUILD_PRESENCES)
+                    .enableCache(CacheFlag.ACTIVITY, CacheFlag.ONLINE_STATUS)
+                    .setMemberCachePolicy(MemberCachePolicy.ONLINE)
+                    .setChunkingFilter(ChunkingFilter.NONE);
+        }
+
+        // Build JDA with presence/member intents and full member/activity cache
+        return JDABuilder.createDefault(token)
+                .enableIntents(GatewayIntent.GUILD_MEMBERS, GatewayIntent.GUILD_PRESENCES)
+                .setMemberCachePolicy(MemberCachePolicy.ALL)
+                .enableCache(CacheFlag.ACTIVITY, CacheFlag.ONLINE_STATUS)
+                .setChunkingFilter(ChunkingFilter.ALL);
+    }
+
+    // Same cache profiles as createBuilder, for the shard manager
+    private DefaultShardManagerBuilder createShardBuilder() {
+        if (leanCache) {
+            return DefaultShardManagerBuilder.createLight(token, GatewayIntent.GUILD_MEMBERS,
+                    GatewayIntent.GUILD_PRESENCES)
+                    .enableCache(CacheFlag.ACTIVITY, CacheFlag.ONLINE_STATUS)
+                    .setMemberCachePolicy(MemberCachePolicy.ONLINE)
+                    .setChunkingFilter(ChunkingFilter.NONE);
+        }
+
+        return DefaultShardManagerBuilder.createDefault(token)
+                .enableIntents(GatewayIntent.GUILD_MEMBERS, GatewayIntent.GUILD_PRESENCES)
+                .setMemberCachePolicy(MemberCachePolicy.ALL)
+                .enableCache(CacheFlag.ACTIVITY, CacheFlag.ONLINE_STATUS)
+                .setChunkingFilter(ChunkingFilter.ALL);
+    }
+
+    private void logCacheFootprint(String scope, List<Guild> guilds, long users) {
+        long members = guilds.stream().mapToLong(g -> g.getMemberCache().size()).sum();
+        Runtime rt = Runtime.getRuntime();
+        long heapMb = (rt.totalMemory() - rt.freeMemory()) / (1024 * 1024);
+        log.info("JDA cache for {} ({} mode): {} member(s), {} user(s) cached, heap in use {} MB",
+                scope, leanCache ? "lean" : "full", members, users, heapMb);
+    }
+
+    // Stops event delivery and polling so the write-behind queue can drain the final transitions
+    @PreDestroy
+    public void stopBot() throws InterruptedException {
+        if (shardManager != null) {
+            shardManager.shutdown();
+        }
+        if (jda != null) {
+            jda.shutdown();
         }
+        scheduler.shutdown();
+        if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Scheduler did not stop within 10s");
+        }
+        if (workers != null) {
+            workers.shutdown();
+        }
+    }
+
+    // Hands a cycle over the guilds to the scan scheduler; returns immediately, false when skipped
+    private boolean scanGuilds(String phase, List<Guild> guilds, long intervalMillis, boolean allGuilds) {
+        return reconciler.scan(phase, guilds.stream().map(JdaPresenceSource::new).toList(), intervalMillis,
+                allGuilds);
+    }
+
+    // Whether guilds() currently covers every guild: the connection, or every shard, is up and no guild is
+    // in an outage. getGuilds() leaves unavailable guilds out, so their members would look offline.
+    private boolean allConnected() {
+        if (shardManager != null)
+            return shardManager.getShardsQueued() == 0 && shardManager.getShardCache().stream()
+                    .allMatch(DiscordBotService::fullyAvailable);
+        return jda != null && fullyAvailable(jda);
+    }
+
+    private static boolean fullyAvailable(JDA connection) {
+        return connection.getStatus() == JDA.Status.CONNECTED && connection.getUnavailableGuilds().isEmpty();
     }
 
-    // Closes an active session and persists the accumulated duration
-    private void closeActiveSession(GameSession session, Instant now, String username) {
-        Duration add = Duration.between(session.getStartTime(), now);
-        session.setTotalDuration(session.getTotalDuration().plus(add));
-        session.setActive(false);
-        sessionRepo.save(session);
-        log.info("Closed session for {} on {} (+{} min)", username, session.getGame(), add.toMinutes());
-    }
-
-    // Starts a new active session for the given user and game
-    private void startNewSession(String userId, String username, String game, Instant now) {
-        GameSession s = new GameSession();
-        s.setDiscordUserId(userId);
-        s.setUsername(username);
-        s.setGame(game);
-        s.setStartTime(now);
-        s.setTotalDuration(Duration.ZERO);
-        s.setActive(true);
-        sessionRepo.save(s);
-        log.info("Started session for {} playing {}", username, game);
+    @Override
+    public void onUserActivityStart(UserActivityStartEvent event) {
+        if (presenceEventsEnabled && event.getNewActivity().getType() == Activity.ActivityType.PLAYING) {
+            onPresenceChanged(event.getMember());
+        }
+    }
+
+    @Override
+    public void onUserActivityEnd(UserActivityEndEvent event) {
+        if (presenceEventsEnabled && event.getOldActivity().getType() == Activity.ActivityType.PLAYING) {
+            onPresenceChanged(event.getMember());
+        }
+    }
+
+    // Reconciles a single member as soon as one of its PLAYING activities changes.
+    // Runs on the scheduler thread so the JDA event thread never waits on the reconcile lock.
+    // The games are read there too: JDA updates the cached member in place, so the task always applies
+    // the latest state even when several changes of the same member are queued.
+    private void onPresenceChanged(Member member) {
+        if (member.getUser().isBot())
+            return;
+
+        scheduler.execute(() -> {
+            try {
+                reconciler.reconcile(member.getId(), member.getEffectiveName(),
+                        JdaPresenceSource.playingGames(member), Instant.now());
+            } catch (Exception e) {
+                log.error("Presence event handling failed for {}", member.getEffectiveName(), e);
+            }
+        });
     }
 }
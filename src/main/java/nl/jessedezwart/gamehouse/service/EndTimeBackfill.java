@@ -0,0 +1,58 @@
+package nl.jessedezwart.gamehouse.service;
+
+import java.util.List;
+
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import nl.jessedezwart.gamehouse.entity.GameSession;
+import nl.jessedezwart.gamehouse.repository.GameSessionRepository;
+
+// Fills endTime for closed sessions written before the column existed
+@Component
+public class EndTimeBackfill {
+
+    private static final Logger log = LoggerFactory.getLogger(EndTimeBackfill.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    private final GameSessionRepository sessionRepo;
+    private final EntityManager entityManager;
+    private final TransactionTemplate tx;
+
+    public EndTimeBackfill(GameSessionRepository sessionRepo, EntityManager entityManager,
+            PlatformTransactionManager transactionManager) {
+        this.sessionRepo = sessionRepo;
+        this.entityManager = entityManager;
+        this.tx = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void backfill() {
+        int total = 0;
+        while (true) {
+            // Rows are managed inside the transaction, so dirty checking writes them without a merge
+            Integer updated = tx.execute(status -> {
+                entityManager.unwrap(Session.class).setJdbcBatchSize(BATCH_SIZE);
+                List<GameSession> batch = sessionRepo
+                        .findTop500ByActiveFalseAndEndTimeIsNullAndStartTimeIsNotNullAndTotalDurationIsNotNull();
+                for (GameSession s : batch) {
+                    s.setEndTime(s.getStartTime().plus(s.getTotalDuration()));
+                }
+                return batch.size();
+            });
+            total += updated;
+            if (updated < BATCH_SIZE)
+                break;
+        }
+        if (total > 0) {
+            log.info("Backfilled endTime for {} closed session(s)", total);
+        }
+    }
+}
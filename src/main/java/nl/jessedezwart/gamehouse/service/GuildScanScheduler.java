@@ -0,0 +1,243 @@
+package nl.jessedezwart.gamehouse.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// Fans a reconcile cycle out over guilds with bounded concurrency and a per-guild deadline, then hands
+// all per-guild results to a single apply step. A cycle still running when the next is due skips that one.
+@Component
+public class GuildScanScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(GuildScanScheduler.class);
+
+    // Scan of a single guild; implementations should stop once System.nanoTime() passes deadlineNanos
+    @FunctionalInterface
+    public interface GuildScan<R> {
+        R scan(PresenceSource guild, long deadlineNanos);
+    }
+
+    // Receives every guild's result once a cycle is done, with the System.nanoTime() the cycle started at.
+    // complete is false when a guild failed or ran out of time, i.e. when members may be missing.
+    @FunctionalInterface
+    public interface CycleApply<R> {
+        void apply(List<R> results, boolean complete, long startedNanos);
+    }
+
+    // Maximum number of guilds scanned at the same time
+    @Value("${discord.scan.parallelism:4}")
+    private int parallelism;
+
+    // Time budget of a single guild scan, measured from when it starts
+    @Value("${discord.scan.guild-timeout-seconds:5}")
+    private int guildTimeoutSeconds;
+
+    // Guilds that get their own gamehouse.scan.guild series; any further guilds share guild="other"
+    @Value("${discord.scan.guild-metric-limit:50}")
+    private int guildMetricLimit;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong lastCycleMillis = new AtomicLong();
+    private final AtomicLong maxCycleMillis = new AtomicLong();
+    private final AtomicLong cyclesCompleted = new AtomicLong();
+    private final AtomicLong cyclesSkipped = new AtomicLong();
+    private final AtomicLong guildTimeouts = new AtomicLong();
+    private final AtomicLong cyclesOverrun = new AtomicLong();
+    private final AtomicLong lastCompletedNanos = new AtomicLong(System.nanoTime());
+
+    private final MeterRegistry registry;
+    private final Timer cycleTimer;
+
+    // guild name -> its scan timer
+    private final Map<String, Timer> guildTimers = new ConcurrentHashMap<>();
+
+    // Runs the cycle itself so the caller's scheduler thread is never blocked by a slow cycle
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor();
+
+    private ExecutorService workers;
+    private Semaphore permits;
+
+    public GuildScanScheduler(MeterRegistry registry) {
+        this.registry = registry;
+        cycleTimer = Timer.builder("gamehouse.scan.cycle")
+                .description("Duration of a full scan cycle over all guilds, including the apply step")
+                .register(registry);
+        FunctionCounter.builder("gamehouse.scan.cycles.skipped", cyclesSkipped, AtomicLong::get)
+                .description("Cycles not started because the previous one was still running")
+                .register(registry);
+        FunctionCounter.builder("gamehouse.scan.cycles.overrun", cyclesOverrun, AtomicLong::get)
+                .description("Cycles that took longer than their schedule interval")
+                .register(registry);
+        FunctionCounter.builder("gamehouse.scan.guild.timeouts", guildTimeouts, AtomicLong::get)
+                .description("Guild scans that hit their deadline")
+                .register(registry);
+        // Alert when this exceeds a couple of poll intervals: the loop has fallen behind or stopped
+        Gauge.builder("gamehouse.scan.last.completed.age", this,
+                s -> (System.nanoTime() - s.lastCompletedNanos.get()) / 1e9)
+                .description("Seconds since the last scan cycle completed")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        workers = virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(parallelism);
+        permits = new Semaphore(parallelism);
+    }
+
+    // Starts a cycle in the background unless the previous one is still running
+    public <R> boolean trigger(String phase, Collection<? extends PresenceSource> guilds, long intervalMillis, GuildScan<R> scan,
+            CycleApply<R> apply) {
+        if (!running.compareAndSet(false, true)) {
+            cyclesSkipped.incrementAndGet();
+            log.warn("[{}] Previous scan cycle still running, skipping this one", phase);
+            return false;
+        }
+        coordinator.execute(() -> {
+            try {
+                runCycle(phase, guilds, intervalMillis, scan, apply);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("[{}] Scan cycle failed", phase, e);
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    private <R> void runCycle(String phase, Collection<? extends PresenceSource> guilds, long intervalMillis, GuildScan<R> scan,
+            CycleApply<R> apply) throws InterruptedException {
+        long started = System.nanoTime();
+        long timeoutNanos = TimeUnit.SECONDS.toNanos(guildTimeoutSeconds);
+        AtomicBoolean complete = new AtomicBoolean(true);
+
+        // Guilds scan in waves of `parallelism`, each wave within its deadline; one extra timeout of grace.
+        // Past this the coordinator stops waiting, so a stuck guild cannot stall the cycle.
+        long waves = (guilds.size() + parallelism - 1) / parallelism;
+        long cycleDeadline = started + (waves + 1) * timeoutNanos;
+
+        List<PresenceSource> ordered = new ArrayList<>(guilds);
+        List<Future<R>> futures = new ArrayList<>(ordered.size());
+        for (PresenceSource guild : ordered) {
+            futures.add(workers.submit(() -> {
+                permits.acquire();
+                try {
+                    long guildStarted = System.nanoTime();
+                    long deadline = guildStarted + timeoutNanos;
+                    R result = scan.scan(guild, deadline);
+                    guildTimer(guild.getName()).record(System.nanoTime() - guildStarted, TimeUnit.NANOSECONDS);
+                    if (System.nanoTime() > deadline) {
+                        guildTimeouts.incrementAndGet();
+                        complete.set(false);
+                        log.warn("[{}] Scan of guild '{}' hit its {}s deadline", phase, guild.getName(),
+                                guildTimeoutSeconds);
+                    }
+                    return result;
+                } finally {
+                    permits.release();
+                }
+            }));
+        }
+
+        // A failed guild contributes nothing; its members are still covered by the other guilds
+        List<R> results = new ArrayList<>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            Future<R> future = futures.get(i);
+            try {
+                results.add(future.get(Math.max(0, cycleDeadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (ExecutionException e) {
+                complete.set(false);
+                log.error("[{}] Guild scan failed", phase, e.getCause());
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                guildTimeouts.incrementAndGet();
+                complete.set(false);
+                log.warn("[{}] Scan of guild '{}' did not finish by the cycle deadline, cancelled", phase,
+                        ordered.get(i).getName());
+            }
+        }
+        apply.apply(results, complete.get(), started);
+
+        long finished = System.nanoTime();
+        cycleTimer.record(finished - started, TimeUnit.NANOSECONDS);
+        lastCompletedNanos.set(finished);
+        long millis = TimeUnit.NANOSECONDS.toMillis(finished - started);
+        lastCycleMillis.set(millis);
+        maxCycleMillis.accumulateAndGet(millis, Math::max);
+        cyclesCompleted.incrementAndGet();
+        if (intervalMillis > 0 && millis > intervalMillis) {
+            cyclesOverrun.incrementAndGet();
+            log.warn("[{}] Scan cycle over {} guild(s) took {} ms, longer than the {} ms interval", phase,
+                    guilds.size(), millis, intervalMillis);
+        } else {
+            log.debug("[{}] Scan cycle over {} guild(s) took {} ms", phase, guilds.size(), millis);
+        }
+    }
+
+    // Per-guild timer, so one slow guild stands out instead of disappearing into the cycle's distribution
+    private Timer guildTimer(String guildName) {
+        Timer timer = guildTimers.get(guildName);
+        if (timer != null)
+            return timer;
+        String tag = guildTimers.size() < guildMetricLimit ? guildName : "other";
+        return guildTimers.computeIfAbsent(tag, name -> Timer.builder("gamehouse.scan.guild")
+                .description("Duration of a single guild scan")
+                .tag("guild", name)
+                .register(registry));
+    }
+
+    public long getLastCycleMillis() {
+        return lastCycleMillis.get();
+    }
+
+    public long getMaxCycleMillis() {
+        return maxCycleMillis.get();
+    }
+
+    public long getCyclesCompleted() {
+        return cyclesCompleted.get();
+    }
+
+    public long getCyclesSkipped() {
+        return cyclesSkipped.get();
+    }
+
+    public long getGuildTimeouts() {
+        return guildTimeouts.get();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        coordinator.shutdown();
+        coordinator.awaitTermination(10, TimeUnit.SECONDS);
+        workers.shutdown();
+    }
+}
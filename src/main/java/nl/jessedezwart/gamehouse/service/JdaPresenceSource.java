@@ -0,0 +1,69 @@
+package nl.jessedezwart.gamehouse.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import net.dv8tion.jda.api.entities.Activity;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.utils.ClosableIterator;
+
+// PresenceSource over a JDA guild's member cache
+class JdaPresenceSource implements PresenceSource {
+
+    private final Guild guild;
+
+    JdaPresenceSource(Guild guild) {
+        this.guild = guild;
+    }
+
+    @Override
+    public String getName() {
+        return guild.getName();
+    }
+
+    @Override
+    public Collection<MemberPresence> playingMembers(long deadlineNanos) {
+        // Collect under the cache lock, convert after releasing it; both steps stop at the deadline
+        List<Member> playing = new ArrayList<>();
+        try (ClosableIterator<Member> it = guild.getMemberCache().lockedIterator()) {
+            while (it.hasNext() && System.nanoTime() <= deadlineNanos) {
+                Member member = it.next();
+                if (!member.getUser().isBot() && member.getActivities().stream()
+                        .anyMatch(a -> a.getType() == Activity.ActivityType.PLAYING)) {
+                    playing.add(member);
+                }
+            }
+        }
+
+        List<MemberPresence> out = new ArrayList<>(playing.size());
+        for (Member member : playing) {
+            if (System.nanoTime() > deadlineNanos)
+                break;
+            out.add(presenceOf(member));
+        }
+        return out;
+    }
+
+    @Override
+    public MemberPresence member(String userId) {
+        Member member = guild.getMemberById(userId);
+        return member == null ? null : presenceOf(member);
+    }
+
+    static MemberPresence presenceOf(Member member) {
+        return new MemberPresence(member.getId(), member.getEffectiveName(), playingGames(member));
+    }
+
+    // Set of current PLAYING game names
+    static Set<String> playingGames(Member member) {
+        return member.getActivities().stream()
+                .filter(a -> a.getType() == Activity.ActivityType.PLAYING)
+                .map(Activity::getName)
+                .filter(n -> n != null && !n.isBlank())
+                .collect(Collectors.toSet());
+    }
+}
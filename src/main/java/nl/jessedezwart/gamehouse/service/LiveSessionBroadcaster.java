@@ -0,0 +1,114 @@
+package nl.jessedezwart.gamehouse.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PreDestroy;
+import nl.jessedezwart.gamehouse.dto.LiveSessionDTO;
+import nl.jessedezwart.gamehouse.entity.GameSession;
+import nl.jessedezwart.gamehouse.event.SessionClosedEvent;
+import nl.jessedezwart.gamehouse.event.SessionStartedEvent;
+
+// Pushes session start/stop deltas to connected dashboards over Server-Sent Events
+@Component
+public class LiveSessionBroadcaster {
+
+    private static final Logger log = LoggerFactory.getLogger(LiveSessionBroadcaster.class);
+
+    // Browsers reconnect automatically once a stream times out
+    private static final long EMITTER_TIMEOUT_MS = Duration.ofMinutes(30).toMillis();
+
+    private final ActiveSessionIndex activeIndex;
+
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+
+    // Sends run off the reconcile thread so a slow client cannot stall session tracking
+    private final ScheduledExecutorService sender = Executors.newSingleThreadScheduledExecutor();
+
+    public LiveSessionBroadcaster(ActiveSessionIndex activeIndex) {
+        this.activeIndex = activeIndex;
+        sender.scheduleAtFixedRate(this::heartbeat, 25, 25, TimeUnit.SECONDS);
+    }
+
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MS);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(t -> emitters.remove(emitter));
+        emitters.add(emitter);
+
+        // Snapshot is read when the task runs, so it is never older than deltas queued before it
+        sender.execute(() -> send(emitter, "snapshot",
+                activeIndex.all().stream().map(LiveSessionBroadcaster::toDto).toList()));
+        return emitter;
+    }
+
+    @EventListener
+    public void onSessionStarted(SessionStartedEvent event) {
+        LiveSessionDTO dto = toDto(event.session());
+        sender.execute(() -> broadcast("start", dto));
+    }
+
+    @EventListener
+    public void onSessionClosed(SessionClosedEvent event) {
+        Map<String, String> key = Map.of("key", key(event.session()));
+        sender.execute(() -> broadcast("stop", key));
+    }
+
+    public int subscribers() {
+        return emitters.size();
+    }
+
+    private void broadcast(String name, Object data) {
+        for (SseEmitter emitter : emitters) {
+            send(emitter, name, data);
+        }
+    }
+
+    private void heartbeat() {
+        for (SseEmitter emitter : emitters) {
+            try {
+                emitter.send(SseEmitter.event().comment("keep-alive"));
+            } catch (IOException | IllegalStateException e) {
+                emitters.remove(emitter);
+            }
+        }
+    }
+
+    private void send(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Dropping live session subscriber: {}", e.getMessage());
+            emitters.remove(emitter);
+        }
+    }
+
+    private static LiveSessionDTO toDto(GameSession s) {
+        return new LiveSessionDTO(key(s), s.getUsername(), s.getGame(), s.getStartTime(),
+                s.getTotalDuration().getSeconds());
+    }
+
+    private static String key(GameSession s) {
+        return s.getDiscordUserId() + "|" + s.getGame();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+        emitters.forEach(SseEmitter::complete);
+    }
+}
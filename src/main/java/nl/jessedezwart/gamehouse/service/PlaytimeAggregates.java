@@ -0,0 +1,145 @@
+package nl.jessedezwart.gamehouse.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import nl.jessedezwart.gamehouse.entity.GameSession;
+import nl.jessedezwart.gamehouse.event.SessionClosedEvent;
+import nl.jessedezwart.gamehouse.event.SessionStartedEvent;
+import nl.jessedezwart.gamehouse.repository.ClosedSessionRow;
+
+// Running playtime totals of closed sessions, combined with live time from the active index on read.
+// Filled at startup by SessionHistoryLoader.
+@Component
+public class PlaytimeAggregates {
+
+    private static final Logger log = LoggerFactory.getLogger(PlaytimeAggregates.class);
+
+    private final ActiveSessionIndex activeIndex;
+
+    // game -> summed duration of all closed sessions
+    private final Map<String, Duration> closedByGame = new ConcurrentHashMap<>();
+
+    // discordUserId -> summed duration of all closed sessions
+    private final Map<String, Duration> closedByUser = new ConcurrentHashMap<>();
+
+    // discordUserId -> most recently seen display name
+    private final Map<String, String> usernames = new ConcurrentHashMap<>();
+
+    // Longest span, in millis, of any closed session; bounds how far before a window a session can start
+    private final AtomicLong longestClosedMillis = new AtomicLong();
+
+    public PlaytimeAggregates(ActiveSessionIndex activeIndex) {
+        this.activeIndex = activeIndex;
+    }
+
+    // Rows arrive in start order, so the last name seen per user is the most recent one
+    void addLoaded(ClosedSessionRow r) {
+        addClosed(r.game(), r.discordUserId(), r.totalDuration());
+        trackSpan(r.startTime(), r.endTime(), r.totalDuration());
+        if (r.username() != null) {
+            usernames.put(r.discordUserId(), r.username());
+        }
+    }
+
+    // After the closed rows: active sessions carry the newest names
+    void loadActive() {
+        for (GameSession s : activeIndex.all()) {
+            usernames.put(s.getDiscordUserId(), s.getUsername());
+        }
+        log.info("Loaded closed playtime totals for {} game(s) and {} user(s)", closedByGame.size(),
+                closedByUser.size());
+    }
+
+    @EventListener
+    public void onSessionStarted(SessionStartedEvent event) {
+        GameSession s = event.session();
+        usernames.put(s.getDiscordUserId(), s.getUsername());
+    }
+
+    @EventListener
+    public void onSessionClosed(SessionClosedEvent event) {
+        GameSession s = event.session();
+        addClosed(s.getGame(), s.getDiscordUserId(), s.getTotalDuration());
+        trackSpan(s.getStartTime(), s.getEndTime(), s.getTotalDuration());
+    }
+
+    private void addClosed(String game, String userId, Duration total) {
+        closedByGame.merge(game, total, Duration::plus);
+        closedByUser.merge(userId, total, Duration::plus);
+    }
+
+    // Legacy rows without an end time get start + total from the backfill, so the total counts as a span too
+    private void trackSpan(Instant start, Instant end, Duration total) {
+        long millis = total.toMillis();
+        if (end != null) {
+            millis = Math.max(millis, Duration.between(start, end).toMillis());
+        }
+        longestClosedMillis.accumulateAndGet(millis, Math::max);
+    }
+
+    // Earliest start time of any session, closed or active, that can overlap a window beginning at from.
+    // Lets range queries put a lower bound on startTime instead of scanning from the oldest row.
+    public Instant earliestStartOverlapping(Instant from) {
+        Instant earliest = from.minusMillis(longestClosedMillis.get());
+        for (GameSession s : activeIndex.all()) {
+            if (s.getStartTime().isBefore(earliest)) {
+                earliest = s.getStartTime();
+            }
+        }
+        return earliest;
+    }
+
+    // Closed totals plus the live duration of every active session, per game
+    public Map<String, Duration> totalsByGame(Instant now) {
+        Map<String, Duration> totals = new HashMap<>(closedByGame);
+        for (GameSession s : activeIndex.all()) {
+            totals.merge(s.getGame(), liveDuration(s, now), Duration::plus);
+        }
+        return totals;
+    }
+
+    // Users with the most playtime (closed plus live), highest first, at most limit entries
+    public List<UserPlaytime> topUsers(int limit, Instant now) {
+        Map<String, Duration> totals = new HashMap<>(closedByUser);
+        for (GameSession s : activeIndex.all()) {
+            totals.merge(s.getDiscordUserId(), liveDuration(s, now), Duration::plus);
+        }
+
+        // Min-heap of the current top entries, so selection stays O(users log limit)
+        PriorityQueue<Map.Entry<String, Duration>> top = new PriorityQueue<>(Map.Entry.comparingByValue());
+        for (Map.Entry<String, Duration> e : totals.entrySet()) {
+            top.offer(e);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        List<UserPlaytime> out = new ArrayList<>(top.size());
+        for (Map.Entry<String, Duration> e : top) {
+            out.add(new UserPlaytime(e.getKey(), usernames.getOrDefault(e.getKey(), e.getKey()), e.getValue()));
+        }
+        out.sort(Comparator.comparing(UserPlaytime::total).reversed());
+        return out;
+    }
+
+    public record UserPlaytime(String discordUserId, String username, Duration total) {
+    }
+
+    static Duration liveDuration(GameSession s, Instant now) {
+        return s.getTotalDuration().plus(Duration.between(s.getStartTime(), now));
+    }
+}
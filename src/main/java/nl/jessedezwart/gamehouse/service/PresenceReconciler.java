@@ -0,0 +1,247 @@
+package nl.jessedezwart.gamehouse.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import nl.jessedezwart.gamehouse.entity.GameSession;
+import nl.jessedezwart.gamehouse.event.SessionClosedEvent;
+import nl.jessedezwart.gamehouse.event.SessionStartedEvent;
+import nl.jessedezwart.gamehouse.service.PresenceSource.MemberPresence;
+
+// Turns observed presence into session transitions: scan cycles over PresenceSources and
+// single-member reconciles from presence events both end up in reconcile()
+@Component
+public class PresenceReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(PresenceReconciler.class);
+
+    private final ActiveSessionIndex activeIndex;
+    private final SessionWriteBehind writeBehind;
+    private final ApplicationEventPublisher events;
+    private final SessionDataVersion dataVersion;
+    private final SessionChangeSequence changeSequence;
+    private final GuildScanScheduler scanScheduler;
+
+    private final Counter membersScanned;
+    private final Counter sessionsStarted;
+    private final Counter sessionsClosed;
+    private final DistributionSummary membersPerCycle;
+    private final DistributionSummary transitionsPerCycle;
+
+    // Distinct users reconciled by the last cycle that covered every guild
+    private final AtomicLong trackedUsers = new AtomicLong();
+
+    public PresenceReconciler(ActiveSessionIndex activeIndex, SessionWriteBehind writeBehind,
+            ApplicationEventPublisher events, SessionDataVersion dataVersion, SessionChangeSequence changeSequence,
+            GuildScanScheduler scanScheduler, MeterRegistry registry) {
+        this.activeIndex = activeIndex;
+        this.writeBehind = writeBehind;
+        this.events = events;
+        this.dataVersion = dataVersion;
+        this.changeSequence = changeSequence;
+        this.scanScheduler = scanScheduler;
+
+        membersScanned = Counter.builder("gamehouse.scan.members")
+                .description("Guild members visited by scans, counted once per guild")
+                .register(registry);
+        sessionsStarted = Counter.builder("gamehouse.sessions.transitions").tag("type", "start")
+                .description("Session transitions queued for writing")
+                .register(registry);
+        sessionsClosed = Counter.builder("gamehouse.sessions.transitions").tag("type", "close")
+                .description("Session transitions queued for writing")
+                .register(registry);
+        membersPerCycle = DistributionSummary.builder("gamehouse.scan.cycle.members")
+                .description("Distinct users reconciled per scan cycle")
+                .register(registry);
+        // The cycle itself issues no queries; each transition is one row for the write-behind queue
+        transitionsPerCycle = DistributionSummary.builder("gamehouse.scan.cycle.writes")
+                .description("Session writes queued per scan cycle")
+                .register(registry);
+        Gauge.builder("gamehouse.users.tracked", trackedUsers, AtomicLong::get)
+                .description("Distinct users playing or with an open session in the last complete scan cycle")
+                .register(registry);
+        Gauge.builder("gamehouse.sessions.active", activeIndex, ActiveSessionIndex::size)
+                .description("Open sessions in the active index")
+                .register(registry);
+    }
+
+    // Hands a cycle over the guilds to the scan scheduler; returns immediately, false when skipped.
+    // allGuilds says the guilds are every guild we track, so a user none of them saw is not playing.
+    public boolean scan(String phase, Collection<? extends PresenceSource> guilds, long intervalMillis,
+            boolean allGuilds) {
+        return scanScheduler.trigger(phase, guilds, intervalMillis,
+                (guild, deadline) -> scanGuildOnce(guild, deadline),
+                (results, complete, started) -> applyObservations(results,
+                        allGuilds && complete && !guilds.isEmpty(), started));
+    }
+
+    // What one guild saw of a user during a cycle, and when (System.nanoTime() at the start of that guild's scan)
+    private record ObservedPresence(String username, Set<String> games, long observedAt) {
+
+        // Guild caches can disagree; a game seen in any guild counts as being played.
+        // The merged observation is only as recent as its oldest part.
+        ObservedPresence merge(ObservedPresence other) {
+            Set<String> games = new HashSet<>(this.games);
+            games.addAll(other.games);
+            return new ObservedPresence(username, games, Math.min(observedAt, other.observedAt));
+        }
+    }
+
+    // Collects, without writing anything, the presence of members that are playing or still have
+    // an active session. Only members this guild actually saw are included.
+    private Map<String, ObservedPresence> scanGuildOnce(PresenceSource guild, long deadlineNanos) {
+        Map<String, ObservedPresence> observed = new HashMap<>();
+        long observedAt = System.nanoTime();
+        try {
+            // Stops at the deadline; the remaining members are picked up by the next cycle
+            for (MemberPresence member : guild.playingMembers(deadlineNanos)) {
+                observed.put(member.userId(), new ObservedPresence(member.username(), member.games(), observedAt));
+            }
+
+            // Members with an active session that are no longer playing anything
+            for (String userId : activeIndex.userIds()) {
+                if (observed.containsKey(userId))
+                    continue;
+                if (System.nanoTime() > deadlineNanos)
+                    return observed;
+                MemberPresence member = guild.member(userId);
+                if (member != null) {
+                    observed.put(userId, new ObservedPresence(member.username(), member.games(), observedAt));
+                }
+            }
+            return observed;
+        } finally {
+            membersScanned.increment(observed.size());
+        }
+    }
+
+    // Merges every guild's observations per user and applies one diff per user. With closeUnseen, users
+    // with an active session that no guild reported (offline members dropped from the cache, or members
+    // that left every guild) are reconciled as playing nothing.
+    private void applyObservations(List<Map<String, ObservedPresence>> perGuild, boolean closeUnseen,
+            long cycleStart) {
+        Map<String, ObservedPresence> merged = new HashMap<>();
+        for (Map<String, ObservedPresence> observed : perGuild) {
+            observed.forEach((userId, presence) -> merged.merge(userId, presence, ObservedPresence::merge));
+        }
+
+        if (closeUnseen) {
+            for (String userId : activeIndex.userIds()) {
+                if (merged.containsKey(userId))
+                    continue;
+                Map<String, GameSession> sessions = activeIndex.sessionsOf(userId);
+                if (!sessions.isEmpty()) {
+                    String username = sessions.values().iterator().next().getUsername();
+                    merged.put(userId, new ObservedPresence(username, Set.of(), cycleStart));
+                }
+            }
+        }
+
+        Instant now = Instant.now();
+        int transitions = 0;
+        int stale = 0;
+        long oldest = System.nanoTime();
+        for (Map.Entry<String, ObservedPresence> e : merged.entrySet()) {
+            ObservedPresence presence = e.getValue();
+            oldest = Math.min(oldest, presence.observedAt());
+            int applied = reconcileObserved(e.getKey(), presence, now);
+            if (applied < 0) {
+                stale++;
+            } else {
+                transitions += applied;
+            }
+        }
+        activeIndex.forgetTransitionsBefore(oldest);
+        membersPerCycle.record(merged.size());
+        if (closeUnseen) {
+            trackedUsers.set(merged.size());
+        }
+        transitionsPerCycle.record(transitions);
+        if (stale > 0) {
+            log.debug("Skipped {} user(s) whose sessions changed after they were scanned", stale);
+        }
+    }
+
+    // Applies a scan observation unless a presence event changed the user's sessions after it was taken;
+    // the event saw newer state, and the next cycle observes the user again. Returns -1 when skipped.
+    private synchronized int reconcileObserved(String userId, ObservedPresence presence, Instant now) {
+        if (activeIndex.changedSince(userId, presence.observedAt()))
+            return -1;
+        return reconcile(userId, presence.username(), presence.games(), now);
+    }
+
+    // Diffs the member's current games against its active sessions.
+    // Synchronized because presence events and the sweep apply step can run at the same time.
+    // Returns the number of session transitions made.
+    public synchronized int reconcile(String userId, String username, Set<String> currentGames, Instant now) {
+        // Active sessions for this user, served from the index instead of the database
+        Map<String, GameSession> activeSessions = activeIndex.sessionsOf(userId);
+        int transitions = 0;
+
+        // Close sessions for games no longer present
+        for (GameSession s : activeSessions.values()) {
+            if (!currentGames.contains(s.getGame())) {
+                closeActiveSession(s, now, username);
+                transitions++;
+            }
+        }
+
+        // Start sessions for newly detected games
+        for (String game : currentGames) {
+            if (!activeSessions.containsKey(game)) {
+                startNewSession(userId, username, game, now);
+                transitions++;
+            }
+        }
+        return transitions;
+    }
+
+    // Closes an active session and persists the accumulated duration
+    private void closeActiveSession(GameSession session, Instant now, String username) {
+        Duration add = Duration.between(session.getStartTime(), now);
+        session.setTotalDuration(session.getTotalDuration().plus(add));
+        session.setEndTime(now);
+        session.setActive(false);
+        session.setChangeSeq(changeSequence.next());
+        activeIndex.remove(session);
+        writeBehind.enqueue(session);
+        events.publishEvent(new SessionClosedEvent(session, now));
+        dataVersion.bump();
+        sessionsClosed.increment();
+        log.info("Closed session for {} on {} (+{} min)", username, session.getGame(), add.toMinutes());
+    }
+
+    // Starts a new active session for the given user and game
+    private void startNewSession(String userId, String username, String game, Instant now) {
+        GameSession s = new GameSession();
+        s.setDiscordUserId(userId);
+        s.setUsername(username);
+        s.setGame(game);
+        s.setStartTime(now);
+        s.setTotalDuration(Duration.ZERO);
+        s.setActive(true);
+        s.setChangeSeq(changeSequence.next());
+        activeIndex.add(s);
+        writeBehind.enqueue(s);
+        events.publishEvent(new SessionStartedEvent(s));
+        dataVersion.bump();
+        sessionsStarted.increment();
+        log.info("Started session for {} playing {}", username, game);
+    }
+}
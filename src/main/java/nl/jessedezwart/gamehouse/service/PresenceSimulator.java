@@ -0,0 +1,344 @@
+package nl.jessedezwart.gamehouse.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import nl.jessedezwart.gamehouse.repository.GameSessionRepository;
+
+// Local stand-in for the Discord gateway: synthetic guilds whose members start and stop games, fed through
+// the same scan/reconcile path as the bot. Read the periodic report for reconcile-cycle latency and database
+// write throughput.
+//
+// It writes sim-* sessions through the normal write path, so it must never run against a real database.
+// Start it with --simulator.enabled=true --discord.enabled=false and a throwaway database named twice:
+// --spring.datasource.url=jdbc:sqlite:sim.db --simulator.datasource-url=jdbc:sqlite:sim.db
+// Startup fails unless both URLs match, the bot is disabled and the database holds no non-simulated sessions.
+@Component
+@ConditionalOnProperty(name = "simulator.enabled", havingValue = "true")
+public class PresenceSimulator {
+
+    private static final Logger log = LoggerFactory.getLogger(PresenceSimulator.class);
+
+    private final PresenceReconciler reconciler;
+    private final GuildScanScheduler scanScheduler;
+    private final SessionWriteBehind writeBehind;
+    private final ActiveSessionIndex activeIndex;
+    private final GameSessionRepository sessionRepo;
+
+    // Must repeat spring.datasource.url, as a deliberate confirmation that the simulator may write there
+    @Value("${simulator.datasource-url:}")
+    private String simulatorDatasourceUrl;
+
+    @Value("${spring.datasource.url:}")
+    private String datasourceUrl;
+
+    @Value("${discord.enabled:true}")
+    private boolean discordEnabled;
+
+    // Distinct simulated members across all guilds
+    @Value("${simulator.members:10000}")
+    private int memberCount;
+
+    @Value("${simulator.guilds:10}")
+    private int guildCount;
+
+    // Number of guilds each member is in; above one exercises the cross-guild merge
+    @Value("${simulator.guilds-per-member:1}")
+    private int guildsPerMember;
+
+    // Size of the game catalogue members pick from
+    @Value("${simulator.games:200}")
+    private int gameCount;
+
+    @Value("${simulator.max-games-per-member:2}")
+    private int maxGamesPerMember;
+
+    // Share of members playing something when the simulation starts
+    @Value("${simulator.playing-fraction:0.2}")
+    private double playingFraction;
+
+    // Game starts and stops per second across all members
+    @Value("${simulator.churn-per-second:50}")
+    private int churnPerSecond;
+
+    // Mass disconnect of burst-fraction of all members every interval; 0 disables bursts
+    @Value("${simulator.burst-interval-seconds:0}")
+    private int burstIntervalSeconds;
+
+    @Value("${simulator.burst-fraction:0.3}")
+    private double burstFraction;
+
+    // Disconnected members come back with their games after this long
+    @Value("${simulator.burst-duration-seconds:60}")
+    private int burstDurationSeconds;
+
+    // Scan resolution, the interval the real bot polls at without presence events
+    @Value("${simulator.scan-interval-seconds:10}")
+    private int scanIntervalSeconds;
+
+    // Also reconcile each changed member right away, like the bot does for presence events
+    @Value("${simulator.presence-events:false}")
+    private boolean presenceEvents;
+
+    @Value("${simulator.report-interval-seconds:30}")
+    private int reportIntervalSeconds;
+
+    // member index -> games currently played; replaced, never mutated, so scans can read without locking
+    private AtomicReferenceArray<Set<String>> playing;
+    private List<SimulatedGuild> guilds;
+
+    // member index -> games before the current burst disconnected them
+    private final Map<Integer, Set<String>> disconnected = new HashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final AtomicLong eventReconciles = new AtomicLong();
+    private final AtomicLong eventReconcileNanos = new AtomicLong();
+
+    private long lastReportNanos;
+    private long lastWritten;
+    private long lastCycles;
+    private long lastSkipped;
+
+    public PresenceSimulator(PresenceReconciler reconciler, GuildScanScheduler scanScheduler,
+            SessionWriteBehind writeBehind, ActiveSessionIndex activeIndex, GameSessionRepository sessionRepo) {
+        this.reconciler = reconciler;
+        this.scanScheduler = scanScheduler;
+        this.writeBehind = writeBehind;
+        this.activeIndex = activeIndex;
+        this.sessionRepo = sessionRepo;
+    }
+
+    @PostConstruct
+    public void start() {
+        checkDatabase();
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        playing = new AtomicReferenceArray<>(memberCount);
+        for (int i = 0; i < memberCount; i++) {
+            playing.set(i, random.nextDouble() < playingFraction ? randomGames(random) : Set.of());
+        }
+
+        // Member i is in guilds i, i + stride, ... so every guild gets a similar share
+        guilds = new ArrayList<>(guildCount);
+        for (int g = 0; g < guildCount; g++) {
+            guilds.add(new SimulatedGuild("sim-guild-" + g, new BitSet(memberCount)));
+        }
+        int perMember = Math.max(1, Math.min(guildsPerMember, guildCount));
+        int stride = Math.max(1, guildCount / perMember);
+        for (int i = 0; i < memberCount; i++) {
+            for (int k = 0; k < perMember; k++) {
+                guilds.get((i + k * stride) % guildCount).members.set(i);
+            }
+        }
+
+        log.info("Simulating {} member(s) in {} guild(s), {} churn/s, scan every {}s, presence events {}",
+                memberCount, guildCount, churnPerSecond, scanIntervalSeconds, presenceEvents ? "on" : "off");
+
+        lastReportNanos = System.nanoTime();
+        lastWritten = writeBehind.getWrittenTotal();
+        scheduler.scheduleAtFixedRate(guarded("churn", this::churn), 1, 1, TimeUnit.SECONDS);
+        scheduler.scheduleAtFixedRate(guarded("scan",
+                () -> reconciler.scan("sim-poll", guilds, TimeUnit.SECONDS.toMillis(scanIntervalSeconds), true)),
+                0, scanIntervalSeconds, TimeUnit.SECONDS);
+        scheduler.scheduleAtFixedRate(guarded("report", this::report), reportIntervalSeconds,
+                reportIntervalSeconds, TimeUnit.SECONDS);
+        if (burstIntervalSeconds > 0) {
+            scheduler.scheduleAtFixedRate(guarded("burst", this::burst), burstIntervalSeconds,
+                    burstIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    // Refuses to run unless the datasource was explicitly named as the simulator's and holds only simulated data
+    private void checkDatabase() {
+        if (simulatorDatasourceUrl.isBlank())
+            throw new IllegalStateException("simulator.enabled requires simulator.datasource-url to name a "
+                    + "separate database, set to the same value as spring.datasource.url");
+        if (!simulatorDatasourceUrl.equals(datasourceUrl))
+            throw new IllegalStateException("simulator.datasource-url (" + simulatorDatasourceUrl
+                    + ") does not match spring.datasource.url (" + datasourceUrl + ")");
+        if (discordEnabled)
+            throw new IllegalStateException("The simulator cannot run alongside the bot; set discord.enabled=false");
+        if (sessionRepo.existsByDiscordUserIdNotLike("sim-%"))
+            throw new IllegalStateException("Database " + datasourceUrl
+                    + " contains real sessions; point the simulator at an empty database");
+    }
+
+    // One second worth of random game starts and stops
+    private void churn() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int n = 0; n < churnPerSecond; n++) {
+            int i = random.nextInt(memberCount);
+            if (disconnected.containsKey(i))
+                continue;
+            Set<String> games = new HashSet<>(playing.get(i));
+            if (!games.isEmpty() && (games.size() >= maxGamesPerMember || random.nextBoolean())) {
+                games.remove(games.iterator().next());
+            } else {
+                games.add(randomGame(random));
+            }
+            update(i, Set.copyOf(games));
+        }
+    }
+
+    // Disconnects a share of all members at once, and reconnects them burst-duration-seconds later
+    private void burst() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int count = (int) (memberCount * burstFraction);
+        List<Integer> dropped = new ArrayList<>(count);
+        for (int n = 0; n < count; n++) {
+            int i = random.nextInt(memberCount);
+            if (disconnected.putIfAbsent(i, playing.get(i)) == null) {
+                update(i, Set.of());
+                dropped.add(i);
+            }
+        }
+        log.info("[simulator] Burst disconnected {} member(s)", dropped.size());
+
+        scheduler.schedule(guarded("reconnect", () -> {
+            for (int i : dropped) {
+                update(i, disconnected.remove(i));
+            }
+            log.info("[simulator] Reconnected {} member(s)", dropped.size());
+        }), burstDurationSeconds, TimeUnit.SECONDS);
+    }
+
+    private void update(int i, Set<String> games) {
+        playing.set(i, games);
+        if (presenceEvents) {
+            long started = System.nanoTime();
+            reconciler.reconcile(userId(i), username(i), games, Instant.now());
+            eventReconcileNanos.addAndGet(System.nanoTime() - started);
+            eventReconciles.incrementAndGet();
+        }
+    }
+
+    private void report() {
+        long now = System.nanoTime();
+        double seconds = (now - lastReportNanos) / 1e9;
+        long written = writeBehind.getWrittenTotal();
+        long cycles = scanScheduler.getCyclesCompleted();
+        long skipped = scanScheduler.getCyclesSkipped();
+
+        long reconciles = eventReconciles.getAndSet(0);
+        long reconcileNanos = eventReconcileNanos.getAndSet(0);
+        String events = reconciles == 0 ? "" : String.format(", %d event reconcile(s) avg %.3f ms", reconciles,
+                reconcileNanos / 1e6 / reconciles);
+
+        log.info("[simulator] {} member(s), {} active session(s) | scan cycles: {} done, {} skipped, last {} ms, "
+                + "max {} ms, {} guild timeout(s) | writes: {}/s, {} pending{}",
+                memberCount, activeIndex.size(), cycles - lastCycles, skipped - lastSkipped,
+                scanScheduler.getLastCycleMillis(), scanScheduler.getMaxCycleMillis(),
+                scanScheduler.getGuildTimeouts(), Math.round((written - lastWritten) / seconds),
+                writeBehind.pending(), events);
+
+        lastReportNanos = now;
+        lastWritten = written;
+        lastCycles = cycles;
+        lastSkipped = skipped;
+    }
+
+    private Set<String> randomGames(ThreadLocalRandom random) {
+        int count = 1 + random.nextInt(Math.max(1, maxGamesPerMember));
+        Set<String> games = new HashSet<>();
+        for (int n = 0; n < count; n++) {
+            games.add(randomGame(random));
+        }
+        return Set.copyOf(games);
+    }
+
+    private String randomGame(ThreadLocalRandom random) {
+        return "Sim Game " + random.nextInt(gameCount);
+    }
+
+    private static String userId(int i) {
+        return "sim-" + i;
+    }
+
+    private static String username(int i) {
+        return "Sim Player " + i;
+    }
+
+    private static Runnable guarded(String task, Runnable body) {
+        return () -> {
+            try {
+                body.run();
+            } catch (Exception e) {
+                log.error("[simulator] {} failed", task, e);
+            }
+        };
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        scheduler.shutdown();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    // A guild is a fixed member set over the shared presence array
+    private class SimulatedGuild implements PresenceSource {
+
+        private final String name;
+        private final BitSet members;
+
+        SimulatedGuild(String name, BitSet members) {
+            this.name = name;
+            this.members = members;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Collection<MemberPresence> playingMembers(long deadlineNanos) {
+            List<MemberPresence> out = new ArrayList<>();
+            for (int i = members.nextSetBit(0); i >= 0; i = members.nextSetBit(i + 1)) {
+                if (System.nanoTime() > deadlineNanos)
+                    break;
+                Set<String> games = playing.get(i);
+                if (!games.isEmpty()) {
+                    out.add(new MemberPresence(userId(i), username(i), games));
+                }
+            }
+            return out;
+        }
+
+        @Override
+        public MemberPresence member(String userId) {
+            if (!userId.startsWith("sim-"))
+                return null;
+            int i;
+            try {
+                i = Integer.parseInt(userId.substring(4));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (i < 0 || i >= memberCount || !members.get(i))
+                return null;
+            return new MemberPresence(userId, username(i), playing.get(i));
+        }
+    }
+}
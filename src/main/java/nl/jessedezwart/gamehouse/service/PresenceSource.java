@@ -0,0 +1,21 @@
+package nl.jessedezwart.gamehouse.service;
+
+import java.util.Collection;
+import java.util.Set;
+
+// One guild's view of member presence, as consumed by the scan and reconcile path.
+// Backed by a JDA guild cache in production and by PresenceSimulator for load tests.
+public interface PresenceSource {
+
+    String getName();
+
+    // Non-bot members currently playing at least one game. Stops early, returning what it found so far,
+    // once System.nanoTime() passes deadlineNanos.
+    Collection<MemberPresence> playingMembers(long deadlineNanos);
+
+    // Presence of a member of this guild, or null when the guild does not know the member
+    MemberPresence member(String userId);
+
+    record MemberPresence(String userId, String username, Set<String> games) {
+    }
+}
@@ -0,0 +1,31 @@
+package nl.jessedezwart.gamehouse.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import nl.jessedezwart.gamehouse.repository.GameSessionRepository;
+
+// Persistent, monotonic change counter stamped on GameSession writes; continues from the stored maximum
+@Component
+public class SessionChangeSequence {
+
+    private final GameSessionRepository sessionRepo;
+
+    private final AtomicLong last = new AtomicLong();
+
+    public SessionChangeSequence(GameSessionRepository sessionRepo) {
+        this.sessionRepo = sessionRepo;
+    }
+
+    @PostConstruct
+    public void load() {
+        Long max = sessionRepo.findMaxChangeSeq();
+        last.set(max == null ? 0 : max);
+    }
+
+    public long next() {
+        return last.incrementAndGet();
+    }
+}
@@ -0,0 +1,28 @@
+package nl.jessedezwart.gamehouse.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+// Monotonic counter bumped whenever session data visible to the dashboard changes
+@Component
+public class SessionDataVersion {
+
+    private final AtomicLong version = new AtomicLong();
+
+    // Distinguishes restarts, since the counter itself starts over at zero
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    public long current() {
+        return version.get();
+    }
+
+    public long bump() {
+        return version.incrementAndGet();
+    }
+
+    // Opaque token that changes whenever the version does, including across restarts
+    public String tag() {
+        return epoch + "." + version.get();
+    }
+}
@@ -0,0 +1,45 @@
+package nl.jessedezwart.gamehouse.service;
+
+import java.util.stream.Stream;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import nl.jessedezwart.gamehouse.repository.ClosedSessionRow;
+import nl.jessedezwart.gamehouse.repository.GameSessionRepository;
+
+// Builds every in-memory view of closed-session history from a single pass over the table at startup
+@Component
+public class SessionHistoryLoader {
+
+    private final GameSessionRepository sessionRepo;
+    private final PlaytimeAggregates aggregates;
+    private final ConcurrencyHistogram histogram;
+    private final TransactionTemplate readOnlyTx;
+
+    public SessionHistoryLoader(GameSessionRepository sessionRepo, PlaytimeAggregates aggregates,
+            ConcurrencyHistogram histogram, PlatformTransactionManager transactionManager) {
+        this.sessionRepo = sessionRepo;
+        this.aggregates = aggregates;
+        this.histogram = histogram;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+    }
+
+    @PostConstruct
+    public void load() {
+        // Both consumers rely on start order: last username wins, and the histogram counts each user in sequence
+        readOnlyTx.executeWithoutResult(status -> {
+            try (Stream<ClosedSessionRow> rows = sessionRepo.streamClosedByStartTime()) {
+                rows.forEach(r -> {
+                    aggregates.addLoaded(r);
+                    histogram.addLoaded(r);
+                });
+            }
+        });
+        aggregates.loadActive();
+        histogram.loadActive();
+    }
+}
@@ -0,0 +1,302 @@
+package nl.jessedezwart.gamehouse.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import nl.jessedezwart.gamehouse.entity.GameSession;
+
+// Collects session transitions and persists them in batches, one transaction per flush.
+// Rows are written through a StatelessSession with explicit insert/update, so a flush is a single JDBC
+// batch without the per-row SELECT a merge of a detached session would need.
+// The queue holds copies taken at enqueue time; the live session keeps changing on the reconcile thread
+// and only receives its generated id back, under its own lock.
+@Component
+public class SessionWriteBehind {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionWriteBehind.class);
+
+    private final SessionFactory sessionFactory;
+    private final SessionDataVersion dataVersion;
+
+    // Flush as soon as this many transitions are queued
+    @Value("${sessions.write-behind.batch-size:200}")
+    private int batchSize;
+
+    // Maximum time a transition waits in the queue before it is flushed
+    @Value("${sessions.write-behind.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    // Queue bound; producers block once it is reached so a slow disk cannot exhaust the heap
+    @Value("${sessions.write-behind.capacity:10000}")
+    private int capacity;
+
+    // Attempts per batch before its rows are written one by one and rows that still fail are dropped
+    @Value("${sessions.write-behind.max-attempts:5}")
+    private int maxAttempts;
+
+    // A write of one session: the live object from the active index and the row state to store for it
+    private record PendingWrite(GameSession source, GameSession row) {
+    }
+
+    private BlockingQueue<PendingWrite> queue;
+    private Thread flusher;
+    private volatile boolean running;
+
+    // Enqueuers check running and offer under the read lock, so no offer can land after shutdown stops the queue
+    private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
+
+    // Rows written by completed flushes since startup
+    private final AtomicLong written = new AtomicLong();
+
+    // Rows given up on after every attempt failed
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Timer flushTimer;
+    private final MeterRegistry registry;
+
+    public SessionWriteBehind(EntityManagerFactory entityManagerFactory, SessionDataVersion dataVersion,
+            MeterRegistry registry) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        this.dataVersion = dataVersion;
+        this.registry = registry;
+
+        // One transaction per flush, so this is also the database write latency
+        flushTimer = Timer.builder("gamehouse.sessions.flush")
+                .description("Duration of a write-behind flush transaction")
+                .register(registry);
+        FunctionCounter.builder("gamehouse.sessions.written", written, AtomicLong::get)
+                .description("Session rows written by the write-behind queue")
+                .register(registry);
+        FunctionCounter.builder("gamehouse.sessions.write.dropped", dropped, AtomicLong::get)
+                .description("Session rows dropped after repeated write failures")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(capacity);
+        Gauge.builder("gamehouse.sessions.write.pending", queue, BlockingQueue::size)
+                .description("Session writes waiting in the write-behind queue")
+                .register(registry);
+        running = true;
+        flusher = new Thread(this::run, "session-write-behind");
+        flusher.start();
+    }
+
+    // Queues a snapshot of the session's current state; blocks while the queue is full
+    public void enqueue(GameSession session) {
+        PendingWrite write = new PendingWrite(session, snapshot(session));
+        stateLock.readLock().lock();
+        try {
+            if (running) {
+                if (queue.offer(write))
+                    return;
+                log.warn("Write-behind queue is full ({} pending), waiting for the database", capacity);
+                queue.put(write);
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stateLock.readLock().unlock();
+        }
+        // Stopped, or interrupted while waiting for space: write it on this thread
+        flushWithRetry(List.of(write));
+    }
+
+    private static GameSession snapshot(GameSession s) {
+        GameSession row = new GameSession();
+        synchronized (s) {
+            row.setId(s.getId());
+        }
+        row.setDiscordUserId(s.getDiscordUserId());
+        row.setUsername(s.getUsername());
+        row.setGame(s.getGame());
+        row.setStartTime(s.getStartTime());
+        row.setTotalDuration(s.getTotalDuration());
+        row.setEndTime(s.getEndTime());
+        row.setChangeSeq(s.getChangeSeq());
+        row.setActive(s.isActive());
+        return row;
+    }
+
+    public int pending() {
+        return queue.size();
+    }
+
+    public long getWrittenTotal() {
+        return written.get();
+    }
+
+    private void run() {
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+                batch.add(first);
+
+                // Keep collecting until the batch is full or the oldest entry is due
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    long left = deadline - System.nanoTime();
+                    PendingWrite next = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : null;
+                    if (next == null)
+                        break;
+                    batch.add(next);
+                }
+
+                flushWithRetry(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (!batch.isEmpty()) {
+            flushWithRetry(batch);
+        }
+    }
+
+    private void flushWithRetry(List<PendingWrite> batch) {
+        // The same session may be queued twice (opened then closed); its last snapshot holds its latest state
+        Map<GameSession, PendingWrite> latest = new LinkedHashMap<>();
+        for (PendingWrite write : batch) {
+            latest.put(write.source(), write);
+        }
+        Collection<PendingWrite> unique = latest.values();
+        for (int attempt = 1;; attempt++) {
+            try {
+                flush(unique);
+                return;
+            } catch (Exception e) {
+                if (!running || attempt >= maxAttempts) {
+                    log.error("Failed to flush {} session write(s) after {} attempt(s), writing them one by one",
+                            unique.size(), attempt, e);
+                    flushIndividually(unique);
+                    return;
+                }
+                log.warn("Failed to flush {} session write(s), attempt {} of {}", unique.size(), attempt,
+                        maxAttempts, e);
+                try {
+                    Thread.sleep(flushIntervalMs * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    flushIndividually(unique);
+                    return;
+                }
+            }
+        }
+    }
+
+    // Isolates rows that keep failing, so one bad row cannot hold up the rest of its batch
+    private void flushIndividually(Collection<PendingWrite> writes) {
+        for (PendingWrite write : writes) {
+            try {
+                flush(List.of(write));
+            } catch (Exception e) {
+                GameSession s = write.row();
+                dropped.incrementAndGet();
+                log.error("Dropping session write id={} user={} game={} start={} end={} active={} changeSeq={}",
+                        s.getId(), s.getDiscordUserId(), s.getGame(), s.getStartTime(), s.getEndTime(),
+                        s.isActive(), s.getChangeSeq(), e);
+            }
+        }
+    }
+
+    private void flush(Collection<PendingWrite> writes) {
+        long started = System.nanoTime();
+        Map<GameSession, GameSession> inserted = new IdentityHashMap<>();
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            session.setJdbcBatchSize(batchSize);
+            Transaction tx = session.beginTransaction();
+            try {
+                for (PendingWrite write : writes) {
+                    GameSession row = write.row();
+                    if (row.getId() == null) {
+                        // An earlier flush may have inserted the session after this snapshot was taken
+                        synchronized (write.source()) {
+                            row.setId(write.source().getId());
+                        }
+                    }
+                    if (row.getId() == null) {
+                        session.insert(row);
+                        inserted.put(write.source(), row);
+                    } else {
+                        session.update(row);
+                    }
+                }
+                tx.commit();
+            } catch (RuntimeException e) {
+                if (tx.isActive()) {
+                    tx.rollback();
+                }
+                // Insert assigns the generated id even though the row is gone; clear it so a retry inserts again
+                inserted.values().forEach(row -> row.setId(null));
+                throw e;
+            }
+        }
+        // Only committed ids reach the live sessions, so later snapshots of them become updates
+        inserted.forEach((source, row) -> {
+            synchronized (source) {
+                source.setId(row.getId());
+            }
+        });
+        flushTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        written.addAndGet(writes.size());
+        // Endpoints that read the database see the batch only now
+        dataVersion.bump();
+        log.debug("Flushed {} session write(s) in {} ms", writes.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // Waits for enqueuers that already passed the running check; later ones flush on their own thread
+        stateLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        flusher.join(TimeUnit.SECONDS.toMillis(30));
+        if (flusher.isAlive()) {
+            log.error("Write-behind flusher did not finish within 30s, {} write(s) pending", queue.size());
+            return;
+        }
+
+        // Whatever the flusher left behind, e.g. when it was interrupted
+        List<PendingWrite> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            flushWithRetry(rest);
+        }
+        log.info("Write-behind queue drained");
+    }
+}
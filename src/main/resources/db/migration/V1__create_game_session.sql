@@ -0,0 +1,17 @@
+-- Schema as previously generated by Hibernate; existing databases already have it
+CREATE TABLE IF NOT EXISTS game_session (
+    id bigint NOT NULL PRIMARY KEY,
+    active boolean NOT NULL,
+    discord_user_id varchar(255),
+    game varchar(255),
+    start_time timestamp,
+    total_duration numeric(21, 0),
+    username varchar(255)
+);
+
+CREATE TABLE IF NOT EXISTS game_session_seq (
+    next_val bigint
+);
+
+INSERT INTO game_session_seq (next_val)
+SELECT 1 WHERE NOT EXISTS (SELECT 1 FROM game_session_seq);
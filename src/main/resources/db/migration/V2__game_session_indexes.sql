@@ -0,0 +1,4 @@
+CREATE INDEX IF NOT EXISTS idx_game_session_user_active ON game_session (discord_user_id, active);
+CREATE INDEX IF NOT EXISTS idx_game_session_active ON game_session (active);
+CREATE INDEX IF NOT EXISTS idx_game_session_start ON game_session (start_time);
+CREATE INDEX IF NOT EXISTS idx_game_session_game_start ON game_session (game, start_time);
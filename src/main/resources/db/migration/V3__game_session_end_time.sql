@@ -0,0 +1,4 @@
+-- Populated for existing closed rows by EndTimeBackfill on startup
+ALTER TABLE game_session ADD COLUMN end_time timestamp;
+
+CREATE INDEX IF NOT EXISTS idx_game_session_end ON game_session (end_time);
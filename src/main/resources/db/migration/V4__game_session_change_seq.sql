@@ -0,0 +1,4 @@
+-- Monotonic sequence stamped on every session write, used by the timeline delta endpoint
+ALTER TABLE game_session ADD COLUMN change_seq bigint;
+
+CREATE INDEX IF NOT EXISTS idx_game_session_change_seq ON game_session (change_seq);